@@ -0,0 +1,171 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.*;
+import java.util.concurrent.locks.*;
+
+/*
+ * Draws a canvas from its own thread instead of waiting for AWT to call
+ *  paint.  The event thread hands over snapshots of the scene, which never
+ *  change once taken, and this thread draws the latest one into a
+ *  BufferStrategy (page flipping or blitting from a VolatileImage back
+ *  buffer, whichever the platform accelerates) no more often than the
+ *  display refreshes.  So handling the mouse and drawing never wait on
+ *  each other.
+ */
+public class ActiveRenderer implements Runnable {
+	Canvas canvas; // what we draw on
+	BufferStrategy strategy;
+	volatile Scene.Snapshot latest = null; // the newest picture to draw
+	volatile boolean exposed = true; // must we redraw even if nothing changed?
+	volatile boolean running = false;
+	long framePeriod; // nanoseconds between frames
+	Thread thread = null;
+	volatile long frames = 0; // how many frames we've drawn; only this thread adds to it
+	PerformanceHud hud = null; // figures to draw over the picture, if any
+	Rhythm controller = null; // ... about this
+
+	public ActiveRenderer(Canvas canvas) {
+		if (null == canvas) {
+			throw new IllegalArgumentException("The ActiveRenderer class was passed a null Canvas object");
+		}
+
+		this.canvas = canvas;
+		framePeriod = framePeriod(canvas);
+	}
+
+	/* the nanoseconds between refreshes of the display c is on, or of a
+	 *  60Hz display if it won't say
+	 */
+	public static long framePeriod(Component c) {
+		int rate = DisplayMode.REFRESH_RATE_UNKNOWN;
+		GraphicsConfiguration config = c.getGraphicsConfiguration();
+		if (config != null)
+			rate = config.getDevice().getDisplayMode().getRefreshRate();
+		if (rate == DisplayMode.REFRESH_RATE_UNKNOWN)
+			rate = 60;
+		return 1000000000L/rate;
+	}
+
+	/* Take over the drawing of the canvas, which must be showing by now.
+	 *  AWT won't paint it any more after this.
+	 */
+	public void start() {
+		canvas.setIgnoreRepaint(true);
+		canvas.createBufferStrategy(2);
+		strategy = canvas.getBufferStrategy();
+		// anything that uncovers or resizes the canvas means a redraw
+		canvas.addComponentListener(new ComponentAdapter() {
+				public void componentResized(ComponentEvent e) {
+					exposed = true;
+				}
+				public void componentShown(ComponentEvent e) {
+					exposed = true;
+				}
+			});
+		running = true;
+		thread = new Thread(this, "ActiveRenderer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() {
+		running = false;
+		if (thread != null)
+			LockSupport.unpark(thread);
+	}
+
+	public void setHud(PerformanceHud hud, Rhythm controller) {
+		this.hud = hud;
+		this.controller = controller;
+	}
+
+	// draw the picture again at the next frame, even if it hasn't changed
+	public void expose() {
+		exposed = true;
+	}
+
+	// hand over a new picture; it's drawn at the next frame
+	public void publish(Scene.Snapshot snapshot) {
+		latest = snapshot;
+	}
+
+	public void run() {
+		Scene.Snapshot drawn = null;
+		long next = System.nanoTime();
+		while (running) {
+			Scene.Snapshot snapshot = latest;
+			if ((snapshot != null) && ((snapshot != drawn) || exposed)) {
+				exposed = false;
+				draw(snapshot);
+				drawn = snapshot;
+				frames++;
+			}
+
+			// and wait for the next frame, without falling behind
+			next += framePeriod;
+			long now = System.nanoTime();
+			if (next < now)
+				next = now;
+			else
+				LockSupport.parkNanos(next - now);
+		}
+	}
+
+	// draw one frame, starting over if the buffers were lost on the way
+	void draw(Scene.Snapshot snapshot) {
+		DemoEvents.Paint event = new DemoEvents.Paint();
+		event.begin();
+		boolean showHud = (hud != null) && hud.isVisible();
+		do {
+			do {
+				Graphics g = strategy.getDrawGraphics();
+				try {
+					long start = System.nanoTime();
+					g.setColor(canvas.getBackground());
+					g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+					g.setColor(canvas.getForeground());
+					g.setFont(canvas.getFont());
+					snapshot.paint(g);
+					if (showHud) {
+						hud.painted(System.nanoTime() - start);
+						hud.paint(g, canvas.getWidth(), canvas.getHeight(),
+								  controller.getWherein(), controller.message);
+					}
+				} finally {
+					g.dispose();
+				}
+			} while (strategy.contentsRestored());
+			strategy.show();
+		} while (strategy.contentsLost());
+		Toolkit.getDefaultToolkit().sync();
+		if (event.shouldCommit()) {
+			event.primitives = snapshot.count();
+			event.active = true;
+			event.commit();
+		}
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public long getFrames() {
+		return frames;
+	}
+}
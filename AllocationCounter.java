@@ -0,0 +1,52 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.management.*;
+
+/*
+ * Counts the bytes the current thread has allocated, where the JVM can
+ *  tell us.  Reading the count doesn't allocate anything itself, so it can
+ *  be taken around code that isn't supposed to allocate either.
+ */
+public class AllocationCounter {
+	private static com.sun.management.ThreadMXBean threads = null;
+
+	static {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			threads = (com.sun.management.ThreadMXBean)bean;
+			if (threads.isThreadAllocatedMemorySupported())
+				threads.setThreadAllocatedMemoryEnabled(true);
+			else
+				threads = null;
+		}
+	}
+
+	private AllocationCounter() {
+	}
+
+	// can we count at all on this JVM?
+	public static boolean isSupported() {
+		return threads != null;
+	}
+
+	// the bytes this thread has allocated so far (always 0 if we can't tell)
+	public static long allocatedBytes() {
+		if (threads == null)
+			return 0;
+		return threads.getCurrentThreadAllocatedBytes();
+	}
+}
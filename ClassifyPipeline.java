@@ -0,0 +1,284 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+
+/*
+ * The demo without its window: sounds are read in the text form
+ *  OnsetReader reads, run through the projection rules, and each outcome
+ *  is written out as soon as it's decided, one line each:
+ *
+ *    event  code  begin  end  commentary
+ *
+ *  where commentary names the text the demo would show for the code (the
+ *  name it has in Rhythm), or is "-" if there's none.  Reading, running
+ *  the rules and writing each have a thread of their own.  Between them
+ *  go batches of sounds and of outcomes, a fixed number of each, handed
+ *  back and forth through queues: a stage that runs out of empty batches
+ *  waits for the one after it to give some back.  So a slow reader of the
+ *  output slows down the reading of the input, and the input can go on
+ *  for ever in the same memory.  Nothing is made per sound: the numbers
+ *  are parsed from bytes and written as bytes.
+ *
+ *  Usage: java Rhythm -cli [file]   (standard input if no file)
+ */
+public class ClassifyPipeline implements ProjectionStream.Listener {
+	final static int SOUNDS = 1024; // sounds per batch
+	final static int OUTCOMES = 1024; // outcomes per batch
+	final static int BATCHES = 4; // batches of each between each pair of stages
+
+	// the names of Rhythm's comments, by code
+	final static String[] commentNames = {
+		"commIntro", "comm1MoveStart", "comm1MoveP5", "comm1MoveA5", "commEnd1Right",
+		"commEnd1Wrong", "commTooBack", "commPLimit", "commPLimitEvent", "commALimitEvent",
+		"commP2bMove", "commA2bPbPLimitMove", "commAbPLimitMoveIn2", "commP2bEvent",
+		"commA2bPbLimitEvent", "commAbPLimitEventIn2", "commPcMove",
+		"commAcPEbPLimitMove", "commAbPLimitMove", "commdP2bAE175bEvent",
+		"commdE2bEvent", "commAbPLimitEvent", "commdP175bEvent1", "commdP175bEvent2",
+		"commdB2t25Event", "commA25bPbPLimitEvent"
+	};
+	static byte[][] comments = new byte[OutcomeCounts.CODES + 2][]; // [code + 2], so REJECTED is at 0
+
+	static {
+		for (int code = Projection.REJECTED; code < OutcomeCounts.CODES; code++) {
+			String name = (code == Projection.REJECTED) ? "rejected"
+				: ((code >= 0) && (code < commentNames.length)) ? commentNames[code] : "-";
+			comments[code + 2] = name.getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	// numbers going from one stage to the next, width of them to an item
+	static class Batch {
+		final long[] data;
+		int count = 0; // items in it
+		boolean last = false; // nothing comes after this one
+
+		Batch(int items, int width) {
+			data = new long[items*width];
+		}
+	}
+
+	// full batches going forward, and empty ones coming back
+	static class Channel {
+		final BlockingQueue<Batch> full = new ArrayBlockingQueue<Batch>(BATCHES);
+		final BlockingQueue<Batch> empty = new ArrayBlockingQueue<Batch>(BATCHES);
+
+		Channel(int items, int width) {
+			for (int i = 0; i < BATCHES; i++)
+				empty.add(new Batch(items, width));
+		}
+	}
+
+	InputStream in;
+	OutputStream out;
+	Channel sounds = new Channel(SOUNDS, 2);
+	Channel outcomes = new Channel(OUTCOMES, 4);
+	ProjectionStream stream = new ProjectionStream(Projection.unitLength, this);
+	Batch decided; // the outcomes the rules are putting out
+	volatile Exception failure = null; // what stopped the reading, if anything
+	boolean stopped = false; // was the rules' thread stopped while handing outcomes on?
+	byte[] line = new byte[128]; // the line being written
+	long written = 0; // lines
+
+	public ClassifyPipeline(InputStream in, OutputStream out) {
+		if (null == in) {
+			throw new IllegalArgumentException("The ClassifyPipeline class was passed a null InputStream object");
+		}
+		if (null == out) {
+			throw new IllegalArgumentException("The ClassifyPipeline class was passed a null OutputStream object");
+		}
+
+		this.in = in;
+		this.out = out;
+	}
+
+	// read the sounds into batches, handing each on when it's full or the input pauses
+	void parse() throws InterruptedException {
+		OnsetReader reader = new OnsetReader(in);
+		long[] pair = new long[2];
+		Batch batch = sounds.empty.take();
+		try {
+			while (reader.next(pair)) {
+				batch.data[2*batch.count] = pair[0];
+				batch.data[2*batch.count + 1] = pair[1];
+				batch.count++;
+				if ((batch.count == SOUNDS) || !reader.ready()) {
+					sounds.full.put(batch);
+					batch = sounds.empty.take();
+				}
+			}
+		} catch (IOException e) {
+			failure = e;
+		}
+		batch.last = true;
+		sounds.full.put(batch);
+	}
+
+	// run the rules over the sounds, handing the outcomes on the same way
+	void classify() throws InterruptedException {
+		decided = outcomes.empty.take();
+		while (true) {
+			Batch batch = sounds.full.take();
+			boolean last = batch.last;
+			for (int i = 0; (i < batch.count) && !stopped; i++)
+				stream.sound(batch.data[2*i], batch.data[2*i + 1]);
+			if (stopped)
+				return;
+			batch.count = 0;
+			sounds.empty.put(batch);
+			if (last) {
+				decided.last = true;
+				outcomes.full.put(decided);
+				return;
+			}
+			if ((decided.count > 0) && sounds.full.isEmpty()) {
+				// nothing more has come yet: let these out now
+				outcomes.full.put(decided);
+				decided = outcomes.empty.take();
+			}
+		}
+	}
+
+	public void outcome(long event, int code, long begin, long end) {
+		try {
+			if (decided.count == OUTCOMES) {
+				outcomes.full.put(decided);
+				decided = outcomes.empty.take();
+			}
+		} catch (InterruptedException e) {
+			// we're being stopped: classify sees this and goes no further
+			Thread.currentThread().interrupt();
+			stopped = true;
+			return;
+		}
+		long[] data = decided.data;
+		int at = 4*decided.count++;
+		data[at] = event;
+		data[at + 1] = code;
+		data[at + 2] = begin;
+		data[at + 3] = end;
+	}
+
+	// write the outcomes, flushing whenever we've caught up
+	void format() throws IOException, InterruptedException {
+		while (true) {
+			Batch batch = outcomes.full.take();
+			long[] data = batch.data;
+			for (int i = 0; i < batch.count; i++) {
+				int length = 0;
+				length = put(data[4*i], length);
+				line[length++] = '\t';
+				length = put(data[4*i + 1], length);
+				line[length++] = '\t';
+				length = put(data[4*i + 2], length);
+				line[length++] = '\t';
+				length = put(data[4*i + 3], length);
+				line[length++] = '\t';
+				byte[] comment = comments[(int)data[4*i + 1] + 2];
+				System.arraycopy(comment, 0, line, length, comment.length);
+				length += comment.length;
+				line[length++] = '\n';
+				out.write(line, 0, length);
+			}
+			written += batch.count;
+			boolean last = batch.last;
+			batch.count = 0;
+			outcomes.empty.put(batch);
+			if (last || outcomes.full.isEmpty())
+				out.flush();
+			if (last)
+				return;
+		}
+	}
+
+	// the digits of value into line at length; where the line now ends
+	int put(long value, int length) {
+		if (value < 0) {
+			if (value == Long.MIN_VALUE) {
+				byte[] min = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+				System.arraycopy(min, 0, line, length, min.length);
+				return length + min.length;
+			}
+			line[length++] = '-';
+			value = -value;
+		}
+		int digits = 1;
+		for (long v = value; v >= 10; v /= 10)
+			digits++;
+		for (int i = length + digits - 1; i >= length; i--) {
+			line[i] = (byte)('0' + value%10);
+			value /= 10;
+		}
+		return length + digits;
+	}
+
+	/* Run the three stages until the input ends; the writing is done on
+	 *  the calling thread.  An input that can't be read throws once
+	 *  everything before the problem has been written.
+	 */
+	public void run() throws Exception {
+		Thread parser = new Thread("ClassifyPipeline-parse") {
+				public void run() {
+					try {
+						parse();
+					} catch (InterruptedException e) {
+						// we're being stopped
+					}
+				}
+			};
+		Thread classifier = new Thread("ClassifyPipeline-classify") {
+				public void run() {
+					try {
+						classify();
+					} catch (InterruptedException e) {
+						// we're being stopped
+					}
+				}
+			};
+		parser.setDaemon(true);
+		classifier.setDaemon(true);
+		parser.start();
+		classifier.start();
+		try {
+			format();
+		} finally {
+			parser.interrupt();
+			classifier.interrupt();
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	public long getWritten() {
+		return written;
+	}
+
+	public static void main(String argv[]) {
+		InputStream in = System.in;
+		try {
+			if (argv.length > 0)
+				in = new FileInputStream(argv[0]);
+			ClassifyPipeline pipeline = new ClassifyPipeline(in,
+				new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64*1024));
+			pipeline.run();
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * Offers the projection rules to other programs over HTTP, on this
+ *  machine only.  POST /classify with sounds in the text form OnsetReader
+ *  reads (one per line, onset then offset, in the demo's units); every
+ *  three sounds make one performance, and the reply has the message code
+ *  for each, in order, as Projection.classify gives it:
+ *
+ *    {"results":[{"code":20},{"code":9}]}
+ *
+ *  With ?texts=1 each result also has the commentary and instructions the
+ *  demo shows for its code.  ?limit=n measures against a limit other than
+ *  CoordinateArea.unitLength.  A request may hold up to MAX_SOUNDS
+ *  sounds; a longer one gets 413.
+ *
+ *  The server keeps the connections itself, with one thread watching all
+ *  of them; the requests are handled on virtual threads where the JVM has
+ *  them (Java 21 and later), and on a small pool otherwise.  Either way
+ *  no thread is tied up by a connection between requests.
+ *
+ *  Usage: java ClassifyServer [-port n] [-threads n]
+ */
+public class ClassifyServer implements HttpHandler {
+	public final static int defaultPort = 8642;
+	public final static int MAX_SOUNDS = 3*65536; // in one request
+	final static byte[] RESULTS = "\"results\":[".getBytes(StandardCharsets.UTF_8);
+
+	// each code's result, in JSON, made once: [code + 2], so REJECTED is at 0
+	static byte[][] plain = new byte[OutcomeCounts.CODES + 2][];
+	static byte[][] withTexts = new byte[OutcomeCounts.CODES + 2][];
+
+	static {
+		for (int code = Projection.REJECTED; code < OutcomeCounts.CODES; code++) {
+			String json = "{\"code\":" + code;
+			plain[code + 2] = (json + "}").getBytes(StandardCharsets.UTF_8);
+			if ((code >= 0) && (code < Rhythm.comments.length))
+				json += ",\"comment\":" + quote(Rhythm.comments[code])
+					+ ",\"instruction\":" + quote(Rhythm.instructions[code]);
+			withTexts[code + 2] = (json + "}").getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	// s as a JSON string
+	static String quote(String s) {
+		StringBuilder b = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if ((c == '"') || (c == '\\'))
+				b.append('\\').append(c);
+			else if (c == '\n')
+				b.append("\\n");
+			else if (c < ' ')
+				b.append(String.format("\\u%04x", (int)c));
+			else
+				b.append(c);
+		}
+		return b.append('"').toString();
+	}
+
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equals("POST")) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				reply(exchange, 405, "Only POST is allowed\n");
+				return;
+			}
+			long limit = Projection.unitLength;
+			boolean texts = false;
+			String query = exchange.getRequestURI().getRawQuery();
+			if (query != null) {
+				for (String parameter : query.split("&")) {
+					if (parameter.startsWith("limit="))
+						limit = Long.parseLong(parameter.substring(6));
+					else if (parameter.equals("texts=1") || parameter.equals("texts=true"))
+						texts = true;
+				}
+			}
+
+			// read the sounds
+			long[] onsets = new long[48];
+			long[] offsets = new long[48];
+			int count = 0;
+			OnsetReader reader = new OnsetReader(exchange.getRequestBody());
+			long[] pair = new long[2];
+			while (reader.next(pair)) {
+				if (count == MAX_SOUNDS) {
+					reply(exchange, 413, "At most " + MAX_SOUNDS + " sounds in one request\n");
+					return;
+				}
+				if (count == onsets.length) {
+					onsets = Arrays.copyOf(onsets, 2*count);
+					offsets = Arrays.copyOf(offsets, 2*count);
+				}
+				onsets[count] = pair[0];
+				offsets[count] = pair[1];
+				count++;
+			}
+			if (count%3 != 0) {
+				reply(exchange, 400, "The sounds don't come in threes\n");
+				return;
+			}
+
+			// and answer, one performance at a time
+			byte[][] results = texts ? withTexts : plain;
+			ByteArrayOutputStream out = new ByteArrayOutputStream(16*count);
+			out.write('{');
+			out.write(RESULTS, 0, RESULTS.length);
+			for (int i = 0; i < count; i += 3) {
+				if (i > 0)
+					out.write(',');
+				byte[] result = results[Projection.classify(onsets, offsets, i, limit) + 2];
+				out.write(result, 0, result.length);
+			}
+			out.write(']');
+			out.write('}');
+			out.write('\n');
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, out.size());
+			OutputStream body = exchange.getResponseBody();
+			out.writeTo(body);
+			body.close();
+		} catch (IOException | NumberFormatException e) {
+			// once the headers are out (say the client went away while we
+			//  answered) there's nothing left to tell it
+			if (exchange.getResponseCode() == -1)
+				reply(exchange, 400, e.getMessage() + "\n");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	static void reply(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		exchange.getResponseBody().write(bytes);
+	}
+
+	/* A virtual thread per request if this JVM has them; they're looked up
+	 *  by name so that the server still builds and runs on older ones.
+	 */
+	static ExecutorService executor(int threads) {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(threads);
+		}
+	}
+
+	public static void main(String argv[]) throws IOException {
+		int port = defaultPort;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i < argv.length; i++) {
+			if (argv[i].equals("-port") && (i + 1 < argv.length))
+				port = Integer.parseInt(argv[++i]);
+			else if (argv[i].equals("-threads") && (i + 1 < argv.length))
+				threads = Integer.parseInt(argv[++i]);
+			else {
+				System.err.println("Usage: java ClassifyServer [-port n] [-threads n]");
+				System.exit(1);
+			}
+		}
+
+		/* The server writes the headers and the body of a reply separately;
+		 *  unless Nagle's algorithm is off, the body waits for the client to
+		 *  acknowledge the headers, which can take 40ms.
+		 */
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		server.createContext("/classify", new ClassifyServer());
+		ExecutorService executor = executor(threads);
+		server.setExecutor(executor);
+		server.start();
+		System.err.println("Classifying on http://localhost:" + port + "/classify ("
+						   + (executor instanceof ThreadPoolExecutor ? threads + " threads" : "virtual threads") + ")");
+	}
+}
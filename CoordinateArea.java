@@ -31,15 +31,46 @@ public class CoordinateArea extends Canvas {
 	boolean done = false; // have we finished (in one of the many ways)?
 	Point moveArcPos = null; // where the end of the current arc is
 	public final static int interval = 5; // constant for drawing
-	public final static int unitLength = 400/3; // same here
+	public final static int unitLength = Projection.unitLength; // same here
 	int X1 = -1; // where is the X through the first dashed arc?
 	boolean redrawDashedArc1 = false; // do we resize the first dashed arc?
 	boolean clickToChange = false; // can we click anywhere to switch views?
 	boolean addParenthShort = false; // do we add a hypothetical segment?
 	boolean inAlternativeView = false; // are we in a second view?
 	boolean drawTracks = false; // do we draw the railroad tracks?
+	Point spareEnd1 = new Point(); // reused by the mouseMove code for line1[1]
+	Point spareEnd2 = new Point(); // ... for line2[1]
+	Point spareArcPos = new Point(); // ... and for moveArcPos
+	boolean countAllocations = false; // do we count what the mouseMove code allocates?
+	long moves = 0; // how many moves we've counted
+	long moveBytes = 0; // and how many bytes they allocated
+
+	// the parts of the diagram, as the scene keeps them, from the bottom up
+	final static int HEATMAP = 0;
+	final static int NUMBER_LINE = 1;
+	final static int POINTS = 2;
+	final static int LINES = 3;
+	final static int ARC = 4;
+	final static int TRACKS = 5;
+	final static int CROSS = 6;
+	final static int PARENTH = 7;
+	final static int PROJECTIONS = 8;
+	final static int ALTERNATIVE = 9;
+	Scene scene = new Scene(10); // what we last drew
+	boolean sceneDrawn = false; // have we recorded anything yet?
+	ActiveRenderer renderer = null; // draws for us, if we're rendering actively
+	boolean drawing = true; // do we record the diagram at all? (a replay may not)
+	PerformanceHud hud = new PerformanceHud(this); // the figures over the diagram, if they're showing
+	Rectangle hudBounds = new Rectangle(); // where they are
+	OutcomeHeatmap heatmap = null; // shows where the third sound could begin, if set
+	long[] times = null; // when each event happened, if the rules go by that rather than by x
+	long timeLimit = unitLength; // the limit, in the same units as times
+	long tolerance = 0; // how near the projected time an event must be to count as on it
+	final static String[] limitLabels = { "0", "Lim", "2*Lim", "3*Lim" };
+	final static int[] limitLabelOffsets = { 3, -10, -20, -35 };
 
 	public void restart() {
+		DemoEvents.restart();
 
 		// set all the points to null
 		for(int i = 0; i < 2; i++) {
@@ -59,81 +90,6 @@ public class CoordinateArea extends Canvas {
 		repaint();
 	}
 
-	public void backOne(int wherein) {
-		switch (wherein) {
-		case 0:
-			// only one point was defined, so just reset everything
-			restart();
-			controller.setMessages(0);
-			break;
-		case 1:
-			// two points were defined,
-			// so put us back into drawing the first line
-			in1 = true;
-			// reset the drawing point
-			line1[1] = null;
-			// set the default message (this'll change very quickly)
-			controller.setMessages(2);
-			// turn off any possible X's
-			X1 = -1;
-			// make sure the arcing is set
-			arcing1 = true;
-			// we're not done, either
-			done = false;
-			break;
-		case 2:
-			// three points were defined,
-			// so reset the third point to null
-			line2[0] = null;
-			// fix the arcing parameters
-			arcing1 = true;
-			arcing2 = false;
-			// get us out of the second event
-			in2 = false;
-			// turn off any possible X's
-			X1 = -1;
-			// set the default message
-			controller.setMessages(7);
-			break;
-		case 3:
-			// four points were defined
-			line2[1] = null;
-			// so put us back into the second event
-			in2 = true;
-			// turn off the X's
-			X1 = -1;
-			// set the default message
-			controller.setMessages(10);
-			// make sure the arcing is set correctly
-			arcing2 = true;
-			// we're not done anymore
-			done = false;
-			break;
-		case 4: case 5:
-			// all 6 points were defined, since the 5th event generates a 6th
-			// so set the second line back to null
-			line3[0] = null;
-			line3[1] = null;
-			// (note that we can never be in the third event)
-			// set the second arc to begin again
-			arcing2 = true;
-			// we're not done anymore
-			done = false;
-			// nor are we in a possible alternate reality ;-)
-			inAlternativeView = false;
-			// nor can we click to change
-			clickToChange = false;
-			// and the next three variables cannot possibly be set yet
-			addParenthShort = false;
-			redrawDashedArc1 = false;
-			drawTracks = false;
-			// so set the default message
-			controller.setMessages(13);
-			break;
-		}
-		repaint();
-	}
-
 	// a standard constructor
 	public CoordinateArea(Rhythm controller) {
 		super();
@@ -151,6 +107,22 @@ public class CoordinateArea extends Canvas {
 		this.controller = controller;
 	}
 
+	/* Have the rules go by times[i] for the i-th event instead of where it
+	 *  was clicked (see TapInput).  times[0] must be 0.
+	 */
+	public void setTimes(long[] times, long limit, long tolerance) {
+		this.times = times;
+		this.timeLimit = limit;
+		this.tolerance = tolerance;
+	}
+
+	// the time of the i-th event, as the rules see it
+	long time(int i) {
+		if (times != null)
+			return times[i];
+		return controller.getPoint(i).x;
+	}
+
 	// the mouseDown event handler
 	public void handleMouseDown(int x, int y) {
 		// if we can go to another reality :-)
@@ -165,8 +137,12 @@ public class CoordinateArea extends Canvas {
 
 		// if we're not done yet
 		if (!done) {
+			int code; // the message the projection rules give for this event
 			// just pass it off to the more intelligent code in Rhythm
+			int before = controller.getWherein();
 			controller.newPoint(x, y);
+			if (controller.getWherein() == before)
+				return; // not a well-defined event: Rhythm has said so, and nothing changes
 			// and then fix the condition variables
 			switch (controller.getWherein()) {
 			case 0:
@@ -185,12 +161,10 @@ public class CoordinateArea extends Canvas {
 				// so note that this happened
 				in1 = false;
 				// make sure we're not indeterminate, and finish if we are
-				if ((x > 0) && (x <= unitLength))
-					controller.setMessages(4);
-				else {
-					controller.setMessages(5);
+				code = Projection.firstEnd(time(1), timeLimit);
+				controller.setMessages(code);
+				if (code == 5)
 					done = true;
-				}
 				// get the new point
 				line1[1] = new Point(x,y);
 				break;
@@ -202,13 +176,11 @@ public class CoordinateArea extends Canvas {
 				// note that we're in the second event
 				in2 = true;
 				// now make sure we haven't gone too far in the intervening space
-				int a = controller.getPoint(1).x;
-				if ((x >= a) && (x < (a + unitLength)))
-					controller.setMessages(8);
-				else if (x >= (a + unitLength)) {
-					controller.setMessages(9);
+				code = Projection.secondBegin(time(1), time(2), timeLimit);
+				if (code != Projection.NONE)
+					controller.setMessages(code);
+				if (code == 9)
 					done = true;
-				}
 				// and get the next point
 				line2[0] = new Point(x,y);
 				break;
@@ -218,17 +190,11 @@ public class CoordinateArea extends Canvas {
 				in2 = false;
 				// now check to see what the distance relationships are
 				// and print the correct commentary and instructions
-				int b = controller.getPoint(2).x;
-				if (x < (2*b))
-					controller.setMessages(13);
-				else if ((x > 2*b) && (x < b + unitLength)) {
-					controller.setMessages(14);
-					done = true;
-				} else if (x > b + unitLength) {
-					controller.setMessages(15);
+				code = Projection.secondEnd(time(2), time(3), timeLimit, tolerance);
+				if (code != Projection.NONE)
+					controller.setMessages(code);
+				if ((code == 14) || (code == 15))
 					done = true;
-				} else if (x == 2*b)
-					controller.setMessages(20);
 				// now get the new point
 				line2[1] = new Point(x,y);
 				break;
@@ -239,40 +205,25 @@ public class CoordinateArea extends Canvas {
 				// get the beginning of the second event
 				int where = controller.getPoint(2).x;
 				line3[0] = new Point(x,y);
-				if ((x < 2*where) && (x >= 1.75*where)) {
-					controller.setMessages(19);
-					controller.newPoint(2*where - 5, y);
-					line3[1] = new Point(2*where - 5, y);
+				code = Projection.thirdBegin(time(2), time(3), time(4), timeLimit, tolerance);
+				if (code != Projection.NONE) {
+					// the demo ends the third sound itself
+					int end = (int)Projection.thirdEnd(code, where, x);
+					controller.setMessages(code);
+					controller.newPoint(end, y);
+					line3[1] = new Point(end, y);
+				}
+				switch (code) {
+				case 19: case 24:
 					redrawDashedArc1 = true;
-				} else if ((x < 1.75*where) && (x >= controller.getPoint(3).x)) {
-					controller.setMessages(22);
+					break;
+				case 22:
 					clickToChange = true;
 					addParenthShort = true;
-					controller.newPoint(2*where - 5, y);
-					line3[1] = new Point(2*where - 5, y);
-				} else if (x == 2*where) {
-					controller.setMessages(20);
-					controller.newPoint(x + 20, y);
-					line3[1] = new Point(x + 20, y);
-				} else if (x > where + unitLength) {
-					controller.newPoint(x + 20, y);
-					line3[1] = new Point(x + 20, y);
-					controller.setMessages(21);
-					drawTracks = true;
-				} else if ((x < 2.5*where) && (x > 2*where)) {
-					controller.setMessages(24);
-					controller.newPoint(x + 20, y);
-					line3[1] = new Point(x + 20, y);
-					redrawDashedArc1 = true;
-				} else if ((x > 2.5*where) && (x < where + unitLength)) {
-					controller.newPoint(x + 20, y);
-					line3[1] = new Point(x + 20, y);
-					controller.setMessages(25);
-				} else if (x > where + unitLength) {
-					controller.newPoint(x + 20, y);
-					line3[1] = new Point(x + 20, y);
-					controller.setMessages(26);
+					break;
+				case 21: case 26:
 					drawTracks = true;
+					break;
 				}
 				done = true;
 				break;
@@ -282,44 +233,65 @@ public class CoordinateArea extends Canvas {
 			}
 			repaint();
 		}
+		// this is a step that Back can go back to
+		int before = controller.history.getPosition();
+		controller.history.commit();
+		if ((controller.journal != null) && (controller.history.getPosition() != before))
+			controller.journal.click();
 		return;
 	}
 
-	// The mouseMove code
+	/* The mouseMove code.  This runs for every motion of the mouse, so it
+	 *  keeps its coordinates in the spare points below rather than making
+	 *  new ones, only changes the messages when the code actually changes,
+	 *  and asks for a single repaint, and only if the drawing changed.
+	 */
 	public void handleMouseMove(int x, int y) {
 		if (!done) {
+			long allocated = countAllocations ? AllocationCounter.allocatedBytes() : 0;
+			// remember what's drawn, to see whether it changes
+			int oldLine1 = (line1[1] == null) ? -1 : line1[1].x;
+			int oldLine2 = (line2[1] == null) ? -1 : line2[1].x;
+			int oldArc = (moveArcPos == null) ? -1 : moveArcPos.x;
+			boolean oldArcing1 = arcing1;
+			boolean oldArcing2 = arcing2;
+			int oldX1 = X1;
+			int code = Projection.NONE; // the message for this move, if any
+
 			if (in1) {
-				line1[1] = new Point(x,y);
+				if (line1[1] == null)
+					line1[1] = spareEnd1;
+				line1[1].setLocation(x, y);
 				if (x == 0)
-					controller.setMessages(1);
+					code = 1;
 				else if (x <= unitLength) {
-					controller.setMessages(2);
+					code = 2;
 					arcing1 = true;
 				} else {
-					controller.setMessages(3);
+					code = 3;
 					arcing1 = false;
 				}
-				repaint();
 			}
 			if (in2) {
 				int b = line2[0].x;
-				if (x >= b)
-					line2[1] = new Point(x,y);
-				else
+				if (x >= b) {
+					if (line2[1] == null)
+						line2[1] = spareEnd2;
+					line2[1].setLocation(x, y);
+				} else
 					line2[1] = null;
 				if (x <= 2*b)
 					X1 = -1;
 				if (x < 2*b)
-					controller.setMessages(10);
+					code = 10;
 				else if ((x > 2*b) && (x < (b + unitLength))) {
-					controller.setMessages(11);
+					code = 11;
 					X1 = b;
 					arcing2 = true;
 				} else if (x > (b + unitLength)) {
-					controller.setMessages(12);
+					code = 12;
 					arcing2 = false;
 				}
-				repaint();
 			}
 
 			/*     if (in3)
@@ -348,152 +320,223 @@ public class CoordinateArea extends Canvas {
 			}
 
 			if (arcing1 || arcing2) {
-				moveArcPos = new Point(x, y);
+				moveArcPos = spareArcPos;
+				moveArcPos.setLocation(x, y);
 				if (arcing1 && !in1)
 					if (x < controller.getPoint(1).x)
-						controller.setMessages(6);
+						code = 6;
 					else if ((x > controller.getPoint(1).x) &&
 							 (x < controller.getPoint(1).x + unitLength))
-						controller.setMessages(7);
+						code = 7;
 				if (arcing2 && !in2)
 					if (x < controller.getPoint(3).x)
-						controller.setMessages(16);
+						code = 16;
 					else if ((x > controller.getPoint(3).x) &&
 							 (x < controller.getPoint(3).x + unitLength))
-						controller.setMessages(17);
+						code = 17;
 					else if (x > controller.getPoint(3).x + unitLength) {
-						controller.setMessages(18);
+						code = 18;
 					}
 			}
-			repaint();
+
+			if (code != Projection.NONE)
+				controller.setMessages(code);
+			if ((oldLine1 != ((line1[1] == null) ? -1 : line1[1].x))
+				|| (oldLine2 != ((line2[1] == null) ? -1 : line2[1].x))
+				|| (oldArc != ((moveArcPos == null) ? -1 : moveArcPos.x))
+				|| (oldArcing1 != arcing1) || (oldArcing2 != arcing2)
+				|| (oldX1 != X1))
+				repaint();
+
+			if (countAllocations) {
+				moveBytes += AllocationCounter.allocatedBytes() - allocated;
+				moves++;
+			}
 		}
 		return;
 	}
 
 	/* a simple helper routine to draw a 180 degree dashed arc on
-	 *  a graphics object g, starting at start and going for length.
+	 *  a scene s, starting at start and going for length.
 	 */
-	public void drawDashedArcSpecial(Graphics g, int start, int length, int y) {
+	public void drawDashedArcSpecial(Scene s, int start, int length, int y) {
 		for(int i = 0; i < 17; i += 2)
-			g.drawArc(start, y, length, 15, -(i*10), 10);
+			s.drawArc(start, y, length, 15, -(i*10), 10);
 	}
 
 	// Another helper, this time to draw an arrowhead at the end of a line
-	public void drawArrowhead(Graphics g, int x, int y) {
-		g.drawLine(x, y, x - 5, y + 5);
-		g.drawLine(x, y, x + 5, y + 5);
-		g.drawLine(x - 5, y + 5, x + 5, y + 5);
+	public void drawArrowhead(Scene s, int x, int y) {
+		s.drawLine(x, y, x - 5, y + 5);
+		s.drawLine(x, y, x + 5, y + 5);
+		s.drawLine(x - 5, y + 5, x + 5, y + 5);
 	}
 
 	// A helper to draw railroad tracks
-	public void drawParallel(Graphics g, int whereX, int whereY) {
-		g.drawLine(whereX - 5, whereY - 5, whereX - 5, whereY + 5);
-		g.drawLine(whereX - 8, whereY - 5, whereX - 8, whereY + 5);
+	public void drawParallel(Scene s, int whereX, int whereY) {
+		s.drawLine(whereX - 5, whereY - 5, whereX - 5, whereY + 5);
+		s.drawLine(whereX - 8, whereY - 5, whereX - 8, whereY + 5);
 	}
 
 	// A helper to draw an arrow
-	public void drawArrow(Graphics g, int where) {
-		g.drawArc(where, 60, 30, 15, -90, -90);
-		g.drawLine(where + 10, 70, where + 15, 75);
-		g.drawLine(where + 10, 80, where + 15, 75);
+	public void drawArrow(Scene s, int where) {
+		s.drawArc(where, 60, 30, 15, -90, -90);
+		s.drawLine(where + 10, 70, where + 15, 75);
+		s.drawLine(where + 10, 80, where + 15, 75);
 	}
 
 	// A helper to draw an X through an arc
-	public void addX(Graphics g, int start) {
+	public void addX(Scene s, int start) {
 		int halfway = 3*start/2;
-		g.drawLine(halfway - 10, 65, halfway + 10, 75);
-		g.drawLine(halfway - 10, 75, halfway + 10, 65);
+		s.drawLine(halfway - 10, 65, halfway + 10, 75);
+		s.drawLine(halfway - 10, 75, halfway + 10, 65);
 	}
 
 	// A helper to draw an "accel" centered at xEnd
-	public void drawAccel(Graphics g, int xEnd) {
-		g.drawString("accel.", xEnd - 20, 110);
+	public void drawAccel(Scene s, int xEnd) {
+		s.drawString("accel.", xEnd - 20, 110);
 	}
 
-	public void drawRall(Graphics g, int xEnd) {
-		g.drawString("rall.", xEnd - 20, 110);
+	public void drawRall(Scene s, int xEnd) {
+		s.drawString("rall.", xEnd - 20, 110);
 	}
 
 	// a helper to draw an accent centered at center
-	public void drawAccent(Graphics g, int center, int height) {
-		g.drawLine(center - 2, height - 2, center + 2, height);
-		g.drawLine(center - 2, height + 2, center + 2, height);
+	public void drawAccent(Scene s, int center, int height) {
+		s.drawLine(center - 2, height - 2, center + 2, height);
+		s.drawLine(center - 2, height + 2, center + 2, height);
 	}
 
 	// a helper to draw a hypothetical parenthesized point
-	public void drawShortParenth(Graphics g, int center) {
-		g.drawString("(", center, 60);
-		g.drawLine(center + 2, 55, center + 30, 55);
-		g.drawString(")", center + 32, 60);
+	public void drawShortParenth(Scene s, int center) {
+		s.drawString("(", center, 60);
+		s.drawLine(center + 2, 55, center + 30, 55);
+		s.drawString(")", center + 32, 60);
+	}
+
+	/* Whenever anything changes, we record the diagram again and repaint
+	 *  only the parts of it that came out differently.
+	 */
+	public void repaint() {
+		if (!drawing)
+			return;
+		drawScene();
+		if ((renderer != null) && renderer.isRunning()) {
+			// the render thread draws everything; just hand it the new picture
+			scene.close(null);
+			renderer.publish(scene.snapshot());
+		} else
+			scene.close(this);
+	}
+
+	/* Switch to drawing from a render thread of our own (see
+	 *  ActiveRenderer).  We must be showing on the screen already.
+	 */
+	public void startActiveRendering() {
+		if (renderer != null)
+			return;
+		renderer = new ActiveRenderer(this);
+		renderer.setHud(hud, controller);
+		renderer.start();
+		repaint();
 	}
 
 	/* This code will be called an umpteen number of times, since it is used
-	 *  in the execution of repaint().
+	 *  in the execution of repaint().  It only draws what drawScene
+	 *  recorded, and only the parts of it inside the clip.
 	 */
 	public void paint(Graphics g) {
+		DemoEvents.Paint event = new DemoEvents.Paint();
+		event.begin();
+		long start = System.nanoTime();
+		if (!sceneDrawn) {
+			drawScene();
+			scene.close(this);
+		}
+		scene.paint(g);
+		if (event.shouldCommit()) {
+			event.primitives = scene.primitives;
+			event.commit();
+		}
+		if (hud.isVisible()) {
+			hud.painted(System.nanoTime() - start);
+			hud.paint(g, getWidth(), getHeight(), controller.getWherein(), controller.message);
+		}
+	}
+
+	// show the HUD's figures as they are now
+	void refreshHud() {
+		if ((renderer != null) && renderer.isRunning())
+			renderer.expose();
+		else {
+			hud.bounds(getWidth(), getHeight(), hudBounds);
+			super.repaint(hudBounds.x, hudBounds.y, hudBounds.width, hudBounds.height);
+		}
+	}
+
+	// record the whole diagram into the scene, part by part
+	void drawScene() {
+		Scene s = scene;
+		s.open();
+		sceneDrawn = true;
+
+		// shade where the next click could go by what it would bring
+		s.part(HEATMAP);
+		if (heatmap != null) {
+			Image shading = heatmap.current();
+			if (shading != null)
+				s.drawImage(shading, 0, OutcomeHeatmap.TOP);
+		}
+
 		// draw a number line
+		s.part(NUMBER_LINE);
 		int unitLength2 = unitLength/interval;
-		g.drawLine(0, 10, 3*unitLength, 10);
+		s.drawLine(0, 10, 3*unitLength, 10);
 		for (int n = 0; n < 3*interval; n++)
-			g.drawLine(n*unitLength2, 8, n*unitLength2, 12);
+			s.drawLine(n*unitLength2, 8, n*unitLength2, 12);
 		for (int k = 0; k < 4; k++) {
-			g.drawLine(k*unitLength2*interval, 5, k*unitLength2*interval, 15);
-			switch (k) {
-			case 0:
-				g.drawString(Integer.toString(k),
-							 k*unitLength + 3, 25);
-				break;
-			case 1:
-				g.drawString("Lim",
-							 k*unitLength - 10, 25);
-				break;
-			case 2:
-				g.drawString(Integer.toString(k) + "*Lim",
-							 k*unitLength - 20, 25);	
-				break;
-			case 3:
-				g.drawString(Integer.toString(k) + "*Lim",
-							 k*unitLength - 35, 25);	
-				break;
-			}
+			s.drawLine(k*unitLength2*interval, 5, k*unitLength2*interval, 15);
+			s.drawString(limitLabels[k], k*unitLength + limitLabelOffsets[k], 25);
 		}
 
 		// draw any points stored in the array
+		s.part(POINTS);
 		for(int i = 0; i < 6; i++) {
 			Point point = controller.getPoint(i);
 			if (point != null)
-				g.fillRect(point.x - 1, 50, 2, 2);
+				s.fillRect(point.x - 1, 50, 2, 2);
 		}
 
 		// draw the lines as we drag
+		s.part(LINES);
 		if (line1[0] != null && line1[1] != null
 			&& controller.getPoint(1) == null)
-			g.drawLine(line1[0].x, 50, line1[1].x, 50);
+			s.drawLine(line1[0].x, 50, line1[1].x, 50);
 		if (line2[0] != null && line2[1] != null
 			&& controller.getPoint(3) == null)
-			g.drawLine(line2[0].x, 50, line2[1].x, 50);
+			s.drawLine(line2[0].x, 50, line2[1].x, 50);
 		if (line3[0] != null && line3[1] != null
 			&& controller.getPoint(5) == null)
-			g.drawLine(line3[0].x, 50, line3[1].x, 50);
+			s.drawLine(line3[0].x, 50, line3[1].x, 50);
 
 		//... and then once they're stable
 		for(int i = 0; i <= 4; i += 2) {
 			Point start = controller.getPoint(i);
 			Point end = controller.getPoint(i+1);
 			if (start != null && end != null)
-				g.drawLine(start.x, 50, end.x, 50);
+				s.drawLine(start.x, 50, end.x, 50);
 		}
 
 		if (!inAlternativeView) {
 			// draw the arcs if we're arcing
+			s.part(ARC);
 			if (arcing1) {
 				if (moveArcPos != null) {
 					int end = moveArcPos.x;
 					if (line1[1] != null) {
 						if (line1[1].x <= end)
-							g.drawArc(0, 55, 2*end , 15, -90, -90);
+							s.drawArc(0, 55, 2*end , 15, -90, -90);
 						else
-							g.drawArc(0, 55, 2*line1[1].x, 15, -90, -90);
+							s.drawArc(0, 55, 2*line1[1].x, 15, -90, -90);
 					}
 				}
 			} else if (arcing2) {
@@ -502,35 +545,39 @@ public class CoordinateArea extends Canvas {
 					int end = moveArcPos.x;
 					if (line2[1] != null) {
 						if (in2)
-							g.drawArc(start, 80, 2*(end - start), 15, -90, -90);
+							s.drawArc(start, 80, 2*(end - start), 15, -90, -90);
 						else if (line2[1].x <= end)
-							g.drawArc(start, 80, 2*(end - start), 15, -90, -90);
+							s.drawArc(start, 80, 2*(end - start), 15, -90, -90);
 						else
-							g.drawArc(start, 80, 2*(controller.getPoint(3).x - start),
+							s.drawArc(start, 80, 2*(controller.getPoint(3).x - start),
 									  15, -90, -90);			
 					}	
 				}
 			}
 
 			// draw railroad tracks and an arrow if we're supposed to
+			s.part(TRACKS);
 			if (drawTracks) {
-				drawParallel(g, controller.getPoint(2).x + unitLength, 50);
-				drawArrow(g, line3[0].x);
+				drawParallel(s, controller.getPoint(2).x + unitLength, 50);
+				drawArrow(s, line3[0].x);
 	
 			}
 
 			// Draw an X if we're supposed to
+			s.part(CROSS);
 			if (X1 != -1)
-				addX(g, X1);
+				addX(s, X1);
 
 			// add an extra hypothetical event if we're supposed to
+			s.part(PARENTH);
 			if (addParenthShort) {
 				int b = controller.getPoint(2).x;
-				drawShortParenth(g, 2*b);
+				drawShortParenth(s, 2*b);
 			}
 
 			// Draw arcs between the first and third points and the second and fourth
 			// Also draw a dashed arc projection.
+			s.part(PROJECTIONS);
 			for (int m = 0; m <= 2; m += 2) {
 				Point point1 = controller.getPoint(m);
 				Point point2 = controller.getPoint(m+1);
@@ -539,42 +586,43 @@ public class CoordinateArea extends Canvas {
 					if (m == 0) {
 						int xStart = point1.x;
 						int xEnd = point3.x;
-						g.drawArc(xStart, 55, xEnd - xStart, 15, 0, -180);
-						drawArrowhead(g, xEnd, 55);
+						s.drawArc(xStart, 55, xEnd - xStart, 15, 0, -180);
+						drawArrowhead(s, xEnd, 55);
 						if (redrawDashedArc1) {
 							xEnd = controller.getPoint(4).x;
 							if (xEnd > 2*point3.x)
-								drawRall(g, xEnd);
+								drawRall(s, xEnd);
 							else
-								drawAccel(g, xEnd);
+								drawAccel(s, xEnd);
 							for(int i = 0; i < 17; i += 2)
-								g.drawArc(point3.x, 55, xEnd - point3.x, 15, -(i*10), 10);
+								s.drawArc(point3.x, 55, xEnd - point3.x, 15, -(i*10), 10);
 						} else
-							drawDashedArcSpecial(g, xEnd, xEnd - xStart, 55);
+							drawDashedArcSpecial(s, xEnd, xEnd - xStart, 55);
 					}
 					if (m == 2) {
 						int xStart = point1.x;
 						int xEnd = point3.x;
-						g.drawArc(xStart, 80, xEnd - xStart, 15, 0, -180);
-						drawArrowhead(g, xEnd, 80);
-						drawDashedArcSpecial(g, xEnd, xEnd - xStart, 80);
+						s.drawArc(xStart, 80, xEnd - xStart, 15, 0, -180);
+						drawArrowhead(s, xEnd, 80);
+						drawDashedArcSpecial(s, xEnd, xEnd - xStart, 80);
 					}
 				}
 			}
 		} else if (controller.getPoint(4) != null) {
+			s.part(ALTERNATIVE);
 			int xStart1 = controller.getPoint(0).x;
 			int xEnd1 = controller.getPoint(2).x;
 			int xStart2 = xStart1;
 			int xEnd2 = controller.getPoint(4).x;
-			g.drawArc(xStart1, 55, xEnd1 - xStart1, 15, 0, -180);
-			drawArrowhead(g, xEnd1, 55);
+			s.drawArc(xStart1, 55, xEnd1 - xStart1, 15, 0, -180);
+			drawArrowhead(s, xEnd1, 55);
 			for(int i = 8; i < 17; i += 2)
-				g.drawArc(xEnd1, 55, xEnd2 - xEnd1, 15, -(i*10), 10);
-			addX(g, (xEnd1 + xEnd2)/3);
-			drawAccent(g, xEnd2, 45);
-			g.drawArc(xStart2, 80, xEnd2 - xStart2, 15, 0, -180);
-			drawArrowhead(g, xEnd2, 80);
-			drawDashedArcSpecial(g, xEnd2, xEnd2 - xStart2, 80);
+				s.drawArc(xEnd1, 55, xEnd2 - xEnd1, 15, -(i*10), 10);
+			addX(s, (xEnd1 + xEnd2)/3);
+			drawAccent(s, xEnd2, 45);
+			s.drawArc(xStart2, 80, xEnd2 - xStart2, 15, 0, -180);
+			drawArrowhead(s, xEnd2, 80);
+			drawDashedArcSpecial(s, xEnd2, xEnd2 - xStart2, 80);
 		}
 	}
 }
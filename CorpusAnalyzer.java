@@ -0,0 +1,255 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/*
+ * Runs the projection rules over every performance in a corpus: MIDI
+ *  files (.mid, .midi) and text onset files (.txt, .onsets; see
+ *  OnsetReader), found anywhere under the directories given.  The files
+ *  are shared out among all the cores by a fork/join pool.  Each file
+ *  gets its own ProjectionStream and counts, and the counts are added
+ *  together on the way back up the tree of tasks, so no worker ever
+ *  waits on another.  While it runs, it reports its progress every
+ *  second.
+ *
+ *  Usage: java CorpusAnalyzer [-threads n] [-limit seconds] dir-or-file...
+ */
+public class CorpusAnalyzer {
+	File[] files;
+	double limitSeconds = MidiSource.defaultLimitSeconds; // for the MIDI files
+	AtomicLong filesDone = new AtomicLong();
+	AtomicLong failures = new AtomicLong();
+	LongAdder sounds = new LongAdder(); // how many sounds we've analyzed
+
+	public CorpusAnalyzer(File[] files) {
+		this.files = files;
+	}
+
+	public void setLimitSeconds(double limitSeconds) {
+		this.limitSeconds = limitSeconds;
+	}
+
+	// can we read this file?
+	static boolean analyzable(String name) {
+		name = name.toLowerCase();
+		return name.endsWith(".mid") || name.endsWith(".midi")
+			|| name.endsWith(".txt") || name.endsWith(".onsets") || name.endsWith(".onc");
+	}
+
+	// every file we can read, under each of roots
+	public static File[] find(String[] roots) {
+		List<File> found = new ArrayList<File>();
+		ArrayDeque<File> pending = new ArrayDeque<File>();
+		for (int i = 0; i < roots.length; i++)
+			pending.push(new File(roots[i]));
+		while (!pending.isEmpty()) {
+			File f = pending.pop();
+			if (f.isDirectory()) {
+				File[] children = f.listFiles();
+				if (children != null)
+					for (int i = 0; i < children.length; i++)
+						pending.push(children[i]);
+			} else if (analyzable(f.getName()))
+				found.add(f);
+		}
+		File[] result = found.toArray(new File[found.size()]);
+		Arrays.sort(result);
+		return result;
+	}
+
+	// hands sounds on to a stream, counting them as they go by
+	class Counter implements SoundListener {
+		ProjectionStream stream;
+		long seen = 0;
+
+		Counter(ProjectionStream stream) {
+			this.stream = stream;
+		}
+
+		public void sound(long onset, long offset) {
+			stream.sound(onset, offset);
+			// count in batches, so the workers don't all hit the adder at once
+			if (++seen == 1024)
+				flush();
+		}
+
+		void flush() {
+			sounds.add(seen);
+			seen = 0;
+		}
+	}
+
+	// the counts for a single file
+	OutcomeCounts analyze(File file) {
+		OutcomeCounts counts = new OutcomeCounts();
+		Counter counter = new Counter(new ProjectionStream(Projection.unitLength, counts));
+		try {
+			String name = file.getName().toLowerCase();
+			if (name.endsWith(".mid") || name.endsWith(".midi"))
+				new MidiSource(file, limitSeconds).read(counter);
+			else
+				OnsetReader.read(file, counter);
+		} catch (Exception e) {
+			failures.incrementAndGet();
+			System.err.println(file + ": " + e.getMessage());
+		}
+		counter.flush();
+		filesDone.incrementAndGet();
+		return counts;
+	}
+
+	// analyzes files[from..to), splitting the work in half until it's one file
+	@SuppressWarnings("serial")
+	class Task extends RecursiveTask<OutcomeCounts> {
+		final int from, to;
+
+		Task(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		protected OutcomeCounts compute() {
+			if ((to - from == 1) && files[from].getName().toLowerCase().endsWith(".onc"))
+				return analyzeCorpus(files[from]);
+			if (to - from == 1)
+				return analyze(files[from]);
+			int middle = (from + to) >>> 1;
+			Task left = new Task(from, middle);
+			left.fork();
+			OutcomeCounts counts = new Task(middle, to).compute();
+			counts.add(left.join());
+			return counts;
+		}
+	}
+
+	// analyzes pieces [from..to) of a binary corpus, straight from its mappings
+	@SuppressWarnings("serial")
+	class PieceTask extends RecursiveTask<OutcomeCounts> {
+		final OnsetCorpus corpus;
+		final int from, to;
+
+		PieceTask(OnsetCorpus corpus, int from, int to) {
+			this.corpus = corpus;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected OutcomeCounts compute() {
+			if (to - from == 1) {
+				OutcomeCounts counts = new OutcomeCounts();
+				Counter counter = new Counter(new ProjectionStream(Projection.unitLength, counts));
+				try {
+					corpus.read(from, counter);
+				} catch (RuntimeException e) {
+					// one bad piece shouldn't stop the rest of the corpus
+					failures.incrementAndGet();
+					System.err.println(corpus.getName(from) + ": " + e.getMessage());
+				}
+				counter.flush();
+				return counts;
+			}
+			int middle = (from + to) >>> 1;
+			PieceTask left = new PieceTask(corpus, from, middle);
+			left.fork();
+			OutcomeCounts counts = new PieceTask(corpus, middle, to).compute();
+			counts.add(left.join());
+			return counts;
+		}
+	}
+
+	// analyze a file that holds a whole binary corpus, piece by piece
+	OutcomeCounts analyzeCorpus(File file) {
+		OutcomeCounts counts = new OutcomeCounts();
+		try {
+			OnsetCorpus corpus = OnsetCorpus.open(file);
+			try {
+				if (corpus.getPieceCount() > 0)
+					counts = new PieceTask(corpus, 0, corpus.getPieceCount()).invoke();
+			} finally {
+				corpus.close();
+			}
+		} catch (IOException e) {
+			failures.incrementAndGet();
+			System.err.println(file + ": " + e.getMessage());
+		}
+		filesDone.incrementAndGet();
+		return counts;
+	}
+
+	// analyze all the files on pool, and return the counts for all of them together
+	public OutcomeCounts run(ForkJoinPool pool) {
+		if (files.length == 0)
+			return new OutcomeCounts();
+		return pool.invoke(new Task(0, files.length));
+	}
+
+	public static void main(String argv[]) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		double limit = MidiSource.defaultLimitSeconds;
+		List<String> roots = new ArrayList<String>();
+		for (int i = 0; i < argv.length; i++) {
+			if (argv[i].equals("-threads") && (i + 1 < argv.length))
+				threads = Integer.parseInt(argv[++i]);
+			else if (argv[i].equals("-limit") && (i + 1 < argv.length))
+				limit = Double.parseDouble(argv[++i]);
+			else
+				roots.add(argv[i]);
+		}
+		if (roots.isEmpty()) {
+			System.err.println("Usage: java CorpusAnalyzer [-threads n] [-limit seconds] dir-or-file...");
+			System.exit(1);
+		}
+
+		final File[] files = find(roots.toArray(new String[roots.size()]));
+		final CorpusAnalyzer analyzer = new CorpusAnalyzer(files);
+		analyzer.setLimitSeconds(limit);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+
+		// report our progress every second
+		final long start = System.nanoTime();
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+		reporter.scheduleAtFixedRate(new Runnable() {
+				public void run() {
+					double seconds = (System.nanoTime() - start)/1e9;
+					long done = analyzer.filesDone.get();
+					System.err.println(String.format("%d/%d files, %.0f files/s, %.0f sounds/s",
+													 done, files.length, done/seconds,
+													 analyzer.sounds.sum()/seconds));
+				}
+			}, 1, 1, TimeUnit.SECONDS);
+
+		OutcomeCounts counts;
+		try {
+			counts = analyzer.run(pool);
+		} finally {
+			// or the reporter's thread would keep the JVM up after a failure
+			reporter.shutdownNow();
+			pool.shutdown();
+		}
+
+		double seconds = (System.nanoTime() - start)/1e9;
+		counts.print(System.out);
+		System.err.println(String.format("%d files (%d failed), %d outcomes, in %.2f s on %d threads:"
+										 + " %.0f files/s, %.0f outcomes/s",
+										 files.length, analyzer.failures.get(), counts.getTotal(),
+										 seconds, threads, files.length/seconds,
+										 counts.getTotal()/seconds));
+	}
+}
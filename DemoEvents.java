@@ -0,0 +1,124 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import jdk.jfr.*;
+
+/*
+ * Flight Recorder events for what the demo does, so that a recording of
+ *  a live session shows where the time between a mouse event and the
+ *  pixels went.  They're all off unless a recording asks for them (the
+ *  settings in meter.jfc turn them on):
+ *
+ *    java -XX:StartFlightRecording:settings=meter.jfc,filename=demo.jfr Rhythm
+ *
+ *  When they're off they cost next to nothing: the instant ones aren't
+ *  even made, and a Paint never leaves the method, so the JIT doesn't
+ *  really make it, and begin and commit do nothing.
+ */
+public class DemoEvents {
+	private DemoEvents() {
+	}
+
+	/* One of each instant event, never committed, just to ask whether the
+	 *  kind is on; so when it isn't nothing is made at all, even before
+	 *  the JIT gets to the caller.
+	 */
+	final static MessageChange messageChangeProbe = new MessageChange();
+	final static NewPoint newPointProbe = new NewPoint();
+	final static BackOne backOneProbe = new BackOne();
+	final static Restart restartProbe = new Restart();
+
+	// the instant events, made and committed only if they're on
+	static void messageChange(int from, int to) {
+		if (messageChangeProbe.isEnabled()) {
+			MessageChange event = new MessageChange();
+			event.from = from;
+			event.to = to;
+			event.commit();
+		}
+	}
+
+	static void newPoint(int x, int y, int wherein, boolean accepted) {
+		if (newPointProbe.isEnabled()) {
+			NewPoint event = new NewPoint();
+			event.x = x;
+			event.y = y;
+			event.wherein = wherein;
+			event.accepted = accepted;
+			event.commit();
+		}
+	}
+
+	static void backOne(int wherein) {
+		if (backOneProbe.isEnabled()) {
+			BackOne event = new BackOne();
+			event.wherein = wherein;
+			event.commit();
+		}
+	}
+
+	static void restart() {
+		if (restartProbe.isEnabled())
+			new Restart().commit();
+	}
+
+	@Name("meter.MessageChange")
+	@Label("Message Change")
+	@Category("Meter as Rhythm")
+	@Description("The demo showed different instructions and commentary")
+	@Enabled(false)
+	static class MessageChange extends Event {
+		@Label("From") int from; // -2 if it wasn't one of the messages
+		@Label("To") int to;
+	}
+
+	@Name("meter.NewPoint")
+	@Label("New Point")
+	@Category("Meter as Rhythm")
+	@Description("A click defined (or failed to define) the next point")
+	@Enabled(false)
+	static class NewPoint extends Event {
+		@Label("X") int x;
+		@Label("Y") int y;
+		@Label("Points") @Description("How many points there are now, less one") int wherein;
+		@Label("Accepted") boolean accepted;
+	}
+
+	@Name("meter.BackOne")
+	@Label("Back One Step")
+	@Category("Meter as Rhythm")
+	@Enabled(false)
+	static class BackOne extends Event {
+		@Label("Wherein") @Description("Which point the area went back from") int wherein;
+	}
+
+	@Name("meter.Restart")
+	@Label("Restart")
+	@Category("Meter as Rhythm")
+	@Enabled(false)
+	static class Restart extends Event {
+	}
+
+	@Name("meter.Paint")
+	@Label("Paint")
+	@Category("Meter as Rhythm")
+	@Description("The diagram was drawn, by AWT or by the render thread")
+	@Enabled(false)
+	static class Paint extends Event {
+		@Label("Primitives") @Description("The lines, arcs, rectangles and strings drawn") int primitives;
+		@Label("Active") @Description("Drawn by the render thread, not by AWT") boolean active;
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.imageio.*;
+
+/*
+ * Draws the demo's diagram for many performances at once, with no
+ *  display, as PNG and SVG files.  Each performance of three sounds (in
+ *  the text form OnsetReader reads; every three sounds make one) is
+ *  played into a CoordinateArea as a user would perform it, moving the
+ *  mouse to each point and clicking, and the picture it records is
+ *  written out: so the arcs, arrows, X's, accel. and rall., tracks and
+ *  parentheses are the demo's own.  When the demo would offer the
+ *  alternative view (message 22), that is written too, as -alt.  A
+ *  performance the rules reject (a sound with no length, or one that
+ *  begins before the last has ended) is counted and left out, since the
+ *  demo would drop one of its clicks and draw the rest in the wrong
+ *  places.
+ *
+ *  The performances are shared out among the cores by a fork/join pool.
+ *  Each worker thread keeps its own CoordinateArea and image and reuses
+ *  them for every diagram it draws.
+ *
+ *  Usage: java -Djava.awt.headless=true DiagramExport [-png] [-svg] [-threads n]
+ *                  outdir onsets.txt...
+ */
+public class DiagramExport {
+	final static int WIDTH = 4*CoordinateArea.unitLength; // room for a little past 3*Lim
+	final static int HEIGHT = 120;
+	final static Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+
+	File directory;
+	boolean png = true;
+	boolean svg = true;
+	long[] onsets, offsets;
+	int count; // how many performances
+	AtomicLong written = new AtomicLong();
+	AtomicLong rejected = new AtomicLong(); // performances left out
+
+	// what each worker thread draws with, made once per thread
+	class Worker {
+		Rhythm rhythm = new Rhythm();
+		CoordinateArea area;
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_BINARY);
+		Graphics2D g = image.createGraphics();
+
+		Worker() {
+			rhythm.initPoints();
+			area = new CoordinateArea(rhythm);
+			rhythm.coordinateArea = area;
+			g.setFont(font);
+		}
+	}
+
+	ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+			protected Worker initialValue() {
+				return new Worker();
+			}
+		};
+
+	public DiagramExport(File directory, long[] onsets, long[] offsets, int count) {
+		if (null == directory) {
+			throw new IllegalArgumentException("The DiagramExport class was passed a null File object");
+		}
+
+		this.directory = directory;
+		this.onsets = onsets;
+		this.offsets = offsets;
+		this.count = count;
+	}
+
+	// draw and write the i-th performance
+	void export(int i) throws IOException {
+		Worker w = workers.get();
+		Rhythm rhythm = w.rhythm;
+		CoordinateArea area = w.area;
+		int from = 3*i;
+		if (Projection.classify(onsets, offsets, from, Projection.unitLength) == Projection.REJECTED) {
+			rejected.incrementAndGet();
+			return;
+		}
+		rhythm.initPoints();
+		area.restart();
+
+		// perform it: move to each point and click there
+		long origin = onsets[from];
+		long[] events = { 0, offsets[from] - origin, onsets[from + 1] - origin,
+						  offsets[from + 1] - origin, onsets[from + 2] - origin };
+		for (int e = 0; e < events.length; e++) {
+			int x = (int)Math.max(Integer.MIN_VALUE/2, Math.min(Integer.MAX_VALUE/2, events[e]));
+			area.handleMouseMove(x, TapInput.Y);
+			area.handleMouseDown(x, TapInput.Y);
+		}
+
+		String name = String.format("%06d", i);
+		write(w, name);
+		if (area.clickToChange) {
+			area.handleMouseDown(0, TapInput.Y);
+			write(w, name + "-alt");
+		}
+	}
+
+	void write(Worker w, String name) throws IOException {
+		Scene scene = w.area.scene;
+		if (png) {
+			w.g.setColor(Color.white);
+			w.g.fillRect(0, 0, WIDTH, HEIGHT);
+			w.g.setColor(Color.black);
+			scene.paint(w.g);
+			ImageIO.write(w.image, "png", new File(directory, name + ".png"));
+		}
+		if (svg) {
+			Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(new File(directory, name + ".svg")), StandardCharsets.UTF_8));
+			try {
+				out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + WIDTH
+						  + "\" height=\"" + HEIGHT + "\" viewBox=\"0 0 " + WIDTH + " " + HEIGHT + "\">\n");
+				out.write("<style>line,path{stroke:black;fill:none}.fill{fill:black}"
+						  + "text{font-family:sans-serif;font-size:12px}</style>\n");
+				out.write("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+				// AWT draws a one-pixel line along the right and bottom of each coordinate
+				out.write("<g transform=\"translate(0.5 0.5)\">\n");
+				scene.writeSVG(out);
+				out.write("</g>\n</svg>\n");
+			} finally {
+				out.close();
+			}
+		}
+		written.incrementAndGet();
+	}
+
+	// exports performances [from..to), splitting the work in half until it's small
+	@SuppressWarnings("serial")
+	class Task extends RecursiveAction {
+		final int from, to;
+
+		Task(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from <= 16) {
+				for (int i = from; i < to; i++) {
+					try {
+						export(i);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Task(from, middle), new Task(middle, to));
+			}
+		}
+	}
+
+	public void run(ForkJoinPool pool) {
+		pool.invoke(new Task(0, count));
+	}
+
+	// the sounds in files, as long as there are a whole number of threes
+	static int read(String[] names, long[][] into) throws IOException {
+		long[] onsets = new long[1024], offsets = new long[1024];
+		int sounds = 0;
+		long[] pair = new long[2];
+		for (int i = 0; i < names.length; i++) {
+			InputStream in = new FileInputStream(names[i]);
+			try {
+				OnsetReader reader = new OnsetReader(in);
+				while (reader.next(pair)) {
+					if (sounds == onsets.length) {
+						onsets = Arrays.copyOf(onsets, 2*sounds);
+						offsets = Arrays.copyOf(offsets, 2*sounds);
+					}
+					onsets[sounds] = pair[0];
+					offsets[sounds] = pair[1];
+					sounds++;
+				}
+			} finally {
+				in.close();
+			}
+		}
+		into[0] = onsets;
+		into[1] = offsets;
+		return sounds/3;
+	}
+
+	public static void main(String argv[]) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean png = false, svg = false;
+		int i = 0;
+		for (; (i < argv.length) && argv[i].startsWith("-"); i++) {
+			if (argv[i].equals("-png"))
+				png = true;
+			else if (argv[i].equals("-svg"))
+				svg = true;
+			else if (argv[i].equals("-threads") && (i + 1 < argv.length))
+				threads = Integer.parseInt(argv[++i]);
+			else
+				break;
+		}
+		if (argv.length - i < 2) {
+			System.err.println("Usage: java -Djava.awt.headless=true DiagramExport [-png] [-svg] [-threads n] outdir onsets.txt...");
+			System.exit(1);
+		}
+		if (!png && !svg)
+			png = svg = true;
+
+		File directory = new File(argv[i]);
+		directory.mkdirs();
+		long[][] sounds = new long[2][];
+		int count = read(Arrays.copyOfRange(argv, i + 1, argv.length), sounds);
+
+		DiagramExport export = new DiagramExport(directory, sounds[0], sounds[1], count);
+		export.png = png;
+		export.svg = svg;
+		// ImageIO would otherwise cache each PNG on disk before writing it
+		ImageIO.setUseCache(false);
+		long start = System.nanoTime();
+		export.run(new ForkJoinPool(threads));
+		double seconds = (System.nanoTime() - start)/1e9;
+		System.err.println(String.format("%d diagrams for %d performances (%d rejected) in %.2f s on %d threads (%.0f/s)",
+										 export.written.get(), count, export.rejected.get(), seconds, threads,
+										 export.written.get()/seconds));
+	}
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.awt.*;
+
+/*
+ * Every state the demo has been in, so the user can go back to any of
+ *  them and forward again.  A state is taken after each click (and each
+ *  restart), and never changes after that; going back or forward just
+ *  puts the demo into another one, so each takes the same short time
+ *  however long the history has grown.
+ *
+ *  The states share what they have in common instead of each keeping a
+ *  copy: the points are a list, newest first, so a click adds one link
+ *  onto the list of the state before it, and going back and clicking
+ *  somewhere else shares all of the older points with the branch it left.
+ *  The rest of a state (the flags of the CoordinateArea, where the X and
+ *  the growing arc are, and the message) fits in a few ints.  So the
+ *  history grows by a small, fixed amount for each click.
+ *
+ *  Every state ever taken, on whatever branch, is kept in the order it
+ *  was taken, and jump goes straight to any of them.
+ */
+public class EditHistory {
+	// the flags of a CoordinateArea, as bits
+	final static int ARCING1 = 1;
+	final static int ARCING2 = 2;
+	final static int IN1 = 4;
+	final static int IN2 = 8;
+	final static int DONE = 16;
+	final static int REDRAW_DASHED_ARC1 = 32;
+	final static int CLICK_TO_CHANGE = 64;
+	final static int ADD_PARENTH_SHORT = 128;
+	final static int IN_ALTERNATIVE_VIEW = 256;
+	final static int DRAW_TRACKS = 512;
+	final static int ARC = 1024; // is there a growing arc (moveArcPos)?
+
+	// the points clicked so far, newest first
+	static class Points {
+		final int x, y;
+		final Points earlier;
+		final int count; // how many points, this one included
+
+		Points(int x, int y, Points earlier) {
+			this.x = x;
+			this.y = y;
+			this.earlier = earlier;
+			this.count = (earlier == null) ? 1 : earlier.count + 1;
+		}
+	}
+
+	static class State {
+		final State parent; // the state this one was taken after
+		State next = null; // the state forward goes to: the last one taken or left from here
+		final int serial; // where it is in the history
+		final Points points;
+		final int flags;
+		final int x1; // where the X is
+		final int arcX, arcY; // where the growing arc ends
+		final int message;
+
+		State(State parent, int serial, Points points, int flags, int x1,
+			  int arcX, int arcY, int message) {
+			this.parent = parent;
+			this.serial = serial;
+			this.points = points;
+			this.flags = flags;
+			this.x1 = x1;
+			this.arcX = arcX;
+			this.arcY = arcY;
+			this.message = message;
+		}
+
+		int getWherein() {
+			return (points == null) ? -1 : points.count - 1;
+		}
+	}
+
+	Rhythm controller;
+	State[] states = new State[256]; // every state, by serial
+	int count = 0;
+	State current;
+
+	public EditHistory(Rhythm controller) {
+		if (null == controller) {
+			throw new IllegalArgumentException("The EditHistory class was passed a null Rhythm object");
+		}
+
+		this.controller = controller;
+		// where the demo starts: nothing clicked, and the first message showing
+		current = add(null, null, 0, -1, 0, 0, 0);
+	}
+
+	State add(State parent, Points points, int flags, int x1, int arcX, int arcY, int message) {
+		if (count == states.length) {
+			State[] more = new State[2*count];
+			System.arraycopy(states, 0, more, 0, count);
+			states = more;
+		}
+		State state = new State(parent, count, points, flags, x1, arcX, arcY, message);
+		states[count++] = state;
+		if (parent != null)
+			parent.next = state;
+		return state;
+	}
+
+	/* Take the state the demo is in now, after the current one, unless
+	 *  nothing has changed.  Anything that was forward of the current
+	 *  state is still in the history, but forward now comes here.
+	 */
+	public void commit() {
+		CoordinateArea area = controller.coordinateArea;
+		if (area == null)
+			return;
+		int flags = flags(area);
+		int arcX = (area.moveArcPos == null) ? 0 : area.moveArcPos.x;
+		int arcY = (area.moveArcPos == null) ? 0 : area.moveArcPos.y;
+		Points points = share(current.points);
+		if ((points == current.points) && (flags == current.flags) && (area.X1 == current.x1)
+			&& (arcX == current.arcX) && (arcY == current.arcY)
+			&& (controller.message == current.message))
+			return;
+		current = add(current, points, flags, area.X1, arcX, arcY, controller.message);
+	}
+
+	/* The controller's points as a list, sharing as much of from as they
+	 *  have in common with it.  There are never more than six.
+	 */
+	Points share(Points from) {
+		int wherein = controller.getWherein();
+		Points shared = from;
+		while ((shared != null) && (shared.count > wherein + 1))
+			shared = shared.earlier;
+		// drop any newer points that don't match, down to the ones that all do
+		for (Points p = shared; p != null; p = p.earlier) {
+			Point point = controller.getPoint(p.count - 1);
+			if ((point.x != p.x) || (point.y != p.y))
+				shared = p.earlier;
+		}
+		for (int i = (shared == null) ? 0 : shared.count; i <= wherein; i++)
+			shared = new Points(controller.getPoint(i).x, controller.getPoint(i).y, shared);
+		return shared;
+	}
+
+	static int flags(CoordinateArea area) {
+		int flags = 0;
+		if (area.arcing1) flags |= ARCING1;
+		if (area.arcing2) flags |= ARCING2;
+		if (area.in1) flags |= IN1;
+		if (area.in2) flags |= IN2;
+		if (area.done) flags |= DONE;
+		if (area.redrawDashedArc1) flags |= REDRAW_DASHED_ARC1;
+		if (area.clickToChange) flags |= CLICK_TO_CHANGE;
+		if (area.addParenthShort) flags |= ADD_PARENTH_SHORT;
+		if (area.inAlternativeView) flags |= IN_ALTERNATIVE_VIEW;
+		if (area.drawTracks) flags |= DRAW_TRACKS;
+		if (area.moveArcPos != null) flags |= ARC;
+		return flags;
+	}
+
+	// back to the state before the current one; false if there isn't one
+	public boolean undo() {
+		if (current.parent == null)
+			return false;
+		State from = current;
+		restore(current.parent);
+		current.next = from;
+		DemoEvents.backOne(current.getWherein());
+		return true;
+	}
+
+	// forward to the state we last came back from; false if there isn't one
+	public boolean redo() {
+		if (current.next == null)
+			return false;
+		restore(current.next);
+		return true;
+	}
+
+	// straight to the serial-th state ever taken
+	public void jump(int serial) {
+		if ((serial < 0) || (serial >= count))
+			throw new IndexOutOfBoundsException("There is no state " + serial + " in the history");
+		restore(states[serial]);
+		if (current.parent != null)
+			current.parent.next = current;
+	}
+
+	/* Start over from a state read back from elsewhere (a SessionJournal):
+	 *  it becomes the first state, with nothing before it.
+	 */
+	public void begin(State state) {
+		states = new State[256];
+		count = 0;
+		restore(add(null, state.points, state.flags, state.x1, state.arcX, state.arcY, state.message));
+	}
+
+	/* Go to a state read back from elsewhere: back or forward, if it's
+	 *  the state there, and taken after the current one otherwise.
+	 */
+	public void enter(State state) {
+		if ((current.parent != null) && same(current.parent, state))
+			undo();
+		else if ((current.next != null) && same(current.next, state))
+			redo();
+		else
+			restore(add(current, state.points, state.flags, state.x1, state.arcX, state.arcY,
+						state.message));
+	}
+
+	static boolean same(State a, State b) {
+		if ((a.flags != b.flags) || (a.x1 != b.x1) || (a.arcX != b.arcX) || (a.arcY != b.arcY)
+			|| (a.message != b.message) || (a.getWherein() != b.getWherein()))
+			return false;
+		for (Points p = a.points, q = b.points; p != null; p = p.earlier, q = q.earlier)
+			if ((p.x != q.x) || (p.y != q.y))
+				return false;
+		return true;
+	}
+
+	// put the demo into state
+	void restore(State state) {
+		current = state;
+		CoordinateArea area = controller.coordinateArea;
+		int wherein = state.getWherein();
+		controller.wherein = wherein;
+		for (int i = 5; i > wherein; i--)
+			controller.points[i] = null;
+		for (Points p = state.points; p != null; p = p.earlier)
+			controller.points[p.count - 1] = new Point(p.x, p.y);
+
+		// the lines join the points, once they've been clicked
+		area.line1[0] = point(0);
+		area.line1[1] = point(1);
+		area.line2[0] = point(2);
+		area.line2[1] = point(3);
+		area.line3[0] = point(4);
+		area.line3[1] = point(5);
+
+		int flags = state.flags;
+		area.arcing1 = (flags & ARCING1) != 0;
+		area.arcing2 = (flags & ARCING2) != 0;
+		area.in1 = (flags & IN1) != 0;
+		area.in2 = (flags & IN2) != 0;
+		area.done = (flags & DONE) != 0;
+		area.redrawDashedArc1 = (flags & REDRAW_DASHED_ARC1) != 0;
+		area.clickToChange = (flags & CLICK_TO_CHANGE) != 0;
+		area.addParenthShort = (flags & ADD_PARENTH_SHORT) != 0;
+		area.inAlternativeView = (flags & IN_ALTERNATIVE_VIEW) != 0;
+		area.drawTracks = (flags & DRAW_TRACKS) != 0;
+		if ((flags & ARC) != 0) {
+			area.moveArcPos = area.spareArcPos;
+			area.moveArcPos.setLocation(state.arcX, state.arcY);
+		} else
+			area.moveArcPos = null;
+		area.X1 = state.x1;
+
+		controller.setMessages(state.message);
+		area.repaint();
+	}
+
+	// a copy of the i-th point, for a line, if it's been clicked
+	Point point(int i) {
+		Point p = controller.getPoint(i);
+		return (p == null) ? null : new Point(p.x, p.y);
+	}
+
+	public boolean canUndo() {
+		return current.parent != null;
+	}
+
+	public boolean canRedo() {
+		return current.next != null;
+	}
+
+	// how many states have been taken
+	public int size() {
+		return count;
+	}
+
+	// the serial number of the state the demo is in
+	public int getPosition() {
+		return current.serial;
+	}
+}
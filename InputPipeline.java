@@ -0,0 +1,135 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.awt.event.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.swing.Timer;
+
+/*
+ * Sits between the mouse and the CoordinateArea so that the projection
+ *  rules and the drawing run once a frame, not once per motion event.
+ *  Moves go into a single slot, and a newer move simply replaces one
+ *  that hasn't been handled yet.  Clicks go into a queue and are all
+ *  handled, in order; a click first pushes the pending move ahead of
+ *  it, so the area sees the mouse where it really was when clicked.
+ *  Once a frame, on the event thread, everything queued is handed on.
+ */
+public class InputPipeline implements ActionListener {
+	final static long EMPTY = Long.MIN_VALUE; // no move is waiting
+	final static long CLICK = 1L << 62; // marks a click in the queue
+
+	CoordinateArea area;
+	AtomicLong pendingMove = new AtomicLong(EMPTY); // the latest move, packed
+	ConcurrentLinkedQueue<Long> queue = new ConcurrentLinkedQueue<Long>(); // clicks, in order
+	Timer timer;
+	AtomicLong movesReceived = new AtomicLong();
+	AtomicLong movesProcessed = new AtomicLong();
+	AtomicLong clicksReceived = new AtomicLong();
+	AtomicLong clicksProcessed = new AtomicLong();
+
+	public InputPipeline(CoordinateArea area) {
+		if (null == area) {
+			throw new IllegalArgumentException("The InputPipeline class was passed a null CoordinateArea object");
+		}
+
+		this.area = area;
+		int delay = (int)Math.max(1, ActiveRenderer.framePeriod(area)/1000000L);
+		timer = new Timer(delay, this);
+		timer.setCoalesce(true);
+	}
+
+	public void start() {
+		timer.start();
+	}
+
+	public void stop() {
+		timer.stop();
+	}
+
+	// pack a point into a long (31 bits each for x and y), and back again
+	static long pack(int x, int y) {
+		return ((x & 0x7fffffffL) << 31) | (y & 0x7fffffffL);
+	}
+
+	static int unpackX(long packed) {
+		return ((int)(packed >> 31) << 1) >> 1;
+	}
+
+	static int unpackY(long packed) {
+		return ((int)packed << 1) >> 1;
+	}
+
+	// the mouse moved: keep only the latest
+	public void move(int x, int y) {
+		movesReceived.incrementAndGet();
+		pendingMove.set(pack(x, y));
+	}
+
+	// the mouse was clicked: queue it, behind the move that led up to it
+	public void click(int x, int y) {
+		clicksReceived.incrementAndGet();
+		long move = pendingMove.getAndSet(EMPTY);
+		if (move != EMPTY)
+			queue.add(move);
+		queue.add(pack(x, y) | CLICK);
+	}
+
+	// once a frame: hand on the clicks in order, then the latest move
+	public void actionPerformed(ActionEvent e) {
+		drain();
+	}
+
+	public void drain() {
+		Long event;
+		while ((event = queue.poll()) != null) {
+			long packed = event.longValue();
+			if ((packed & CLICK) != 0) {
+				area.handleMouseDown(unpackX(packed), unpackY(packed));
+				clicksProcessed.incrementAndGet();
+			} else {
+				area.handleMouseMove(unpackX(packed), unpackY(packed));
+				movesProcessed.incrementAndGet();
+			}
+		}
+		long move = pendingMove.getAndSet(EMPTY);
+		if (move != EMPTY) {
+			area.handleMouseMove(unpackX(move), unpackY(move));
+			movesProcessed.incrementAndGet();
+		}
+	}
+
+	public long getMovesReceived() {
+		return movesReceived.get();
+	}
+
+	public long getMovesProcessed() {
+		return movesProcessed.get();
+	}
+
+	public long getClicksReceived() {
+		return clicksReceived.get();
+	}
+
+	public long getClicksProcessed() {
+		return clicksProcessed.get();
+	}
+
+	public String toString() {
+		return "moves received " + getMovesReceived() + ", processed " + getMovesProcessed()
+			+ "; clicks received " + getClicksReceived() + ", processed " + getClicksProcessed();
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.util.*;
+
+/*
+ * A recording of everything the user did to the demo: each move and
+ *  click of the mouse and each press of "Back one step", "Forward one
+ *  step" and "Restart", with when it happened.  The file is small:
+ *  after the header each event is a byte for its kind and then
+ *  variable-length numbers for the time since the event before (in
+ *  nanoseconds) and, for the mouse, how far it moved (zigzag encoded,
+ *  so small moves either way take a byte).
+ *
+ *    header  "TRCE", the version, and the width and height of the area
+ *    events  kind, time, [dx, dy]
+ *
+ *  Recorder writes one as the events happen; read loads one back for
+ *  TraceReplay.
+ */
+public class InputTrace {
+	final static int MAGIC = 0x54524345; // "TRCE"
+	final static int VERSION = 1;
+
+	// the kinds of event
+	public final static byte MOVE = 0;
+	public final static byte CLICK = 1;
+	public final static byte BACK = 2;
+	public final static byte RESTART = 3;
+	public final static byte FORWARD = 4;
+
+	int width, height; // the size of the area when it was recorded
+	int count = 0;
+	byte[] kinds = new byte[1024];
+	long[] times = new long[1024]; // from the first event, in nanoseconds
+	int[] xs = new int[1024];
+	int[] ys = new int[1024];
+
+	public int getCount() {
+		return count;
+	}
+
+	// how long the recording lasts, in nanoseconds
+	public long getDuration() {
+		return (count == 0) ? 0 : times[count - 1];
+	}
+
+	void add(byte kind, long time, int x, int y) {
+		if (count == kinds.length) {
+			kinds = Arrays.copyOf(kinds, 2*count);
+			times = Arrays.copyOf(times, 2*count);
+			xs = Arrays.copyOf(xs, 2*count);
+			ys = Arrays.copyOf(ys, 2*count);
+		}
+		kinds[count] = kind;
+		times[count] = time;
+		xs[count] = x;
+		ys[count] = y;
+		count++;
+	}
+
+	public static InputTrace read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if ((in.readInt() != MAGIC) || (in.readInt() != VERSION))
+				throw new IOException(file + " is not an input trace");
+			InputTrace trace = new InputTrace();
+			trace.width = in.readInt();
+			trace.height = in.readInt();
+			long time = 0;
+			int x = 0, y = 0;
+			int kind;
+			while ((kind = in.read()) >= 0) {
+				time += readVarint(in);
+				if ((kind == MOVE) || (kind == CLICK)) {
+					x += unzigzag(readVarint(in));
+					y += unzigzag(readVarint(in));
+				} else if ((kind != BACK) && (kind != RESTART) && (kind != FORWARD))
+					throw new IOException(file + " has an event of unknown kind " + kind);
+				trace.add((byte)kind, time, x, y);
+			}
+			return trace;
+		} catch (EOFException e) {
+			throw new IOException(file + " ends in the middle of an event");
+		} finally {
+			in.close();
+		}
+	}
+
+	static long readVarint(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long)(b & 0x7f) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+			if (shift > 56)
+				throw new IOException("A number in the trace is too long");
+		}
+	}
+
+	static int unzigzag(long v) {
+		return (int)((v >>> 1) ^ -(v & 1));
+	}
+
+	/* Writes a trace as the events come in.  It's called from the event
+	 *  thread, and only ever writes into a buffer there, so recording
+	 *  doesn't slow the demo down.
+	 */
+	public static class Recorder implements Closeable {
+		OutputStream out;
+		long last = -1; // when the last event happened
+		int lastX = 0, lastY = 0;
+		long events = 0;
+
+		public Recorder(File file, int width, int height) throws IOException {
+			out = new BufferedOutputStream(new FileOutputStream(file), 64*1024);
+			DataOutputStream header = new DataOutputStream(out);
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+			header.writeInt(width);
+			header.writeInt(height);
+		}
+
+		public void move(int x, int y) {
+			event(MOVE, x, y);
+		}
+
+		public void click(int x, int y) {
+			event(CLICK, x, y);
+		}
+
+		public void back() {
+			event(BACK, lastX, lastY);
+		}
+
+		public void restart() {
+			event(RESTART, lastX, lastY);
+		}
+
+		public void forward() {
+			event(FORWARD, lastX, lastY);
+		}
+
+		void event(byte kind, int x, int y) {
+			long now = System.nanoTime();
+			if (last < 0)
+				last = now;
+			try {
+				out.write(kind);
+				writeVarint(now - last);
+				if ((kind == MOVE) || (kind == CLICK)) {
+					writeVarint(zigzag(x - lastX));
+					writeVarint(zigzag(y - lastY));
+					lastX = x;
+					lastY = y;
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			last = now;
+			events++;
+		}
+
+		void writeVarint(long v) throws IOException {
+			while ((v & ~0x7fL) != 0) {
+				out.write((int)((v & 0x7f) | 0x80));
+				v >>>= 7;
+			}
+			out.write((int)v);
+		}
+
+		static long zigzag(int v) {
+			return ((long)v << 1) ^ (v >> 31);
+		}
+
+		public long getEvents() {
+			return events;
+		}
+
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+
+/*
+ * Counts latencies into buckets, up to a limit, so that recording one
+ *  never allocates.  Under EXACT microseconds there is a bucket for each
+ *  microsecond; above it, each doubling is split into EXACT/2 buckets,
+ *  so a percentile is never out by more than one part in 512.  That
+ *  keeps a limit of a second to some 6100 buckets.  One thread records
+ *  into a histogram; several can be added together afterwards.
+ */
+public class LatencyHistogram {
+	final static int EXACT = 1024; // in microseconds
+	final static int HALF = EXACT/2;
+
+	long[] buckets; // the last holds everything at or over the limit
+	long count = 0;
+	long max = 0; // in nanoseconds
+
+	public LatencyHistogram(int limitMicros) {
+		if (limitMicros < 1) {
+			throw new IllegalArgumentException("The LatencyHistogram class was passed a limit less than 1");
+		}
+
+		buckets = new long[index(limitMicros) + 1];
+	}
+
+	// the bucket a latency in microseconds goes in
+	static int index(long micros) {
+		if (micros < EXACT)
+			return (int)micros;
+		int shift = 63 - Long.numberOfLeadingZeros(micros) - 9; // leaves ten bits
+		return EXACT + (shift - 1)*HALF + (int)(micros >>> shift) - HALF;
+	}
+
+	// the least latency, in microseconds, a bucket holds
+	static long lowest(int index) {
+		if (index < EXACT)
+			return index;
+		int shift = (index - EXACT)/HALF + 1;
+		return (long)((index - EXACT)%HALF + HALF) << shift;
+	}
+
+	public void record(long nanos) {
+		buckets[Math.min(index(Math.max(nanos, 0)/1000), buckets.length - 1)]++;
+		if (nanos > max)
+			max = nanos;
+		count++;
+	}
+
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < Math.min(buckets.length, other.buckets.length); i++)
+			buckets[i] += other.buckets[i];
+		count += other.count;
+		max = Math.max(max, other.max);
+	}
+
+	// the latency at percentile p (0-100), in microseconds
+	public long getPercentile(double p) {
+		long wanted = (long)Math.ceil(count*p/100);
+		long seen = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			seen += buckets[i];
+			if ((seen >= wanted) && (seen > 0))
+				return lowest(i);
+		}
+		return 0;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	// in microseconds
+	public long getMax() {
+		return max/1000;
+	}
+
+	public void print(PrintStream out) {
+		out.println("latency p50\t" + getPercentile(50) + "us");
+		out.println("latency p90\t" + getPercentile(90) + "us");
+		out.println("latency p99\t" + getPercentile(99) + "us");
+		out.println("latency p99.9\t" + getPercentile(99.9) + "us");
+		out.println("latency max\t" + getMax() + "us");
+	}
+}
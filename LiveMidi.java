@@ -0,0 +1,289 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.*;
+import javax.sound.midi.*;
+
+/*
+ * Listens to a performer as they play.  Note events from a MIDI input (or
+ *  from a Sequencer playing a file, which stands in for a keyboard) are
+ *  stamped as they arrive and put in a NoteRing; that's all the thread
+ *  delivering them does, and it doesn't allocate anything.  Our own thread
+ *  takes them out in order and runs them through a ProjectionStream, which
+ *  has the rules the demo applies to the mouse clicks.  How long each
+ *  event took from arriving to being classified is kept in a histogram.
+ *
+ *  Notes that begin together (within CHORD) make one sound, as in
+ *  MidiSource; a note that begins while another is still held ends the
+ *  sound before it.
+ *  Times go to the rules in microseconds, with the limit in microseconds
+ *  too (the rules only compare durations, so any unit will do), so fast
+ *  notes aren't rounded together.
+ *
+ *  Usage: java LiveMidi [-limit seconds] [-channel n] [-verbose] -file piece.mid
+ *         java LiveMidi [-limit seconds] [-channel n] [-verbose] -device name
+ *         java LiveMidi -list
+ */
+public class LiveMidi implements Receiver, Runnable {
+	final static int SPINS = 100; // how long the consumer spins before it parks
+	final static long PARK = 1000000; // and the longest it parks for, in nanoseconds
+	final static int BUCKETS = 10000; // the longest latency we tell apart, in microseconds
+	final static long CHORD = 20000; // notes begun closer together than this (in microseconds) make one sound
+
+	NoteRing ring;
+	ProjectionStream stream;
+	int channel = -1; // the only channel we listen to, or -1 for all of them
+	Thread consumer = null;
+	volatile boolean running = false;
+	volatile boolean parked = false; // is the consumer waiting to be woken?
+
+	// the consumer's state
+	long origin = -1; // the arrival of the first event, in nanoseconds
+	long onset = -1; // when the current sound began, in microseconds, or -1 if there isn't one
+	long last = -1; // the latest time handed to the stream
+	int sounding = 0; // how many notes are held
+	LatencyHistogram latencies = new LatencyHistogram(BUCKETS);
+
+	public LiveMidi(ProjectionStream stream, int capacity) {
+		if (null == stream) {
+			throw new IllegalArgumentException("The LiveMidi class was passed a null ProjectionStream object");
+		}
+
+		this.stream = stream;
+		ring = new NoteRing(capacity);
+	}
+
+	// listen only to channel (0-15), or to all of them if it's -1
+	public void setChannel(int channel) {
+		this.channel = channel;
+	}
+
+	public void start() {
+		running = true;
+		consumer = new Thread(this, "LiveMidi");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	// stop the consumer, once it has handled everything that came in
+	public void stop() throws InterruptedException {
+		running = false;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+			consumer.join();
+		}
+	}
+
+	/* Called by whatever thread the MIDI system delivers on (always the
+	 *  same one for a given transmitter).  Only note events are kept.
+	 */
+	public void send(MidiMessage message, long timeStamp) {
+		long now = System.nanoTime();
+		if (!(message instanceof ShortMessage))
+			return;
+		ShortMessage m = (ShortMessage)message;
+		int command = m.getCommand();
+		if ((command != ShortMessage.NOTE_ON) && (command != ShortMessage.NOTE_OFF))
+			return;
+		if ((channel >= 0) && (m.getChannel() != channel))
+			return;
+		ring.offer(now, NoteRing.pack(m.getStatus(), m.getData1(), m.getData2()));
+		// the new tail has to be visible before we look to see if the consumer's asleep
+		VarHandle.fullFence();
+		if (parked)
+			LockSupport.unpark(consumer);
+	}
+
+	public void close() {
+		try {
+			stop();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public void run() {
+		int idle = 0;
+		while (true) {
+			if (ring.isEmpty()) {
+				if (!running)
+					break;
+				if (idle < SPINS) {
+					idle++;
+					Thread.onSpinWait();
+				} else {
+					parked = true;
+					if (ring.isEmpty() && running)
+						LockSupport.parkNanos(PARK);
+					parked = false;
+				}
+				continue;
+			}
+			idle = 0;
+			long arrived = ring.peekTime();
+			handle(arrived, ring.peekEvent());
+			ring.remove();
+
+			latencies.record(System.nanoTime() - arrived);
+		}
+	}
+
+	// one note event, which arrived at nanos
+	void handle(long nanos, int event) {
+		if (origin < 0)
+			origin = nanos;
+		long time = (nanos - origin)/1000;
+		// the stream wants every event strictly after the one before
+		if (time <= last)
+			time = last + 1;
+
+		boolean on = (NoteRing.status(event) & 0xf0) == ShortMessage.NOTE_ON;
+		if (on && (NoteRing.data2(event) == 0))
+			on = false; // a note on with no velocity is a note off
+		if (on) {
+			if (onset < 0) {
+				stream.onset(time);
+				onset = last = time;
+			} else if (time - onset >= CHORD) {
+				// legato: the held sound ends just as this one begins
+				stream.offset(time - 1);
+				stream.onset(time);
+				onset = last = time;
+			}
+			// otherwise it joins the sound that has only just begun
+			sounding++;
+		} else if (sounding > 0) {
+			sounding--;
+			if (sounding == 0) {
+				stream.offset(time);
+				onset = -1;
+				last = time;
+			}
+		}
+	}
+
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+
+	public void report(PrintStream out) {
+		out.println("events\t" + latencies.getCount());
+		out.println("dropped\t" + ring.getDropped());
+		latencies.print(out);
+	}
+
+	// print each outcome as it comes, as well as counting it
+	static class Printer implements ProjectionStream.Listener {
+		ProjectionStream.Listener next;
+
+		Printer(ProjectionStream.Listener next) {
+			this.next = next;
+		}
+
+		public void outcome(long event, int code, long begin, long end) {
+			next.outcome(event, code, begin, end);
+			if (code >= 0)
+				System.out.println(event + "\t" + code);
+		}
+	}
+
+	static void list() throws MidiUnavailableException {
+		MidiDevice.Info[] infos = MidiSystem.getMidiDeviceInfo();
+		for (int i = 0; i < infos.length; i++) {
+			MidiDevice device = MidiSystem.getMidiDevice(infos[i]);
+			if (device.getMaxTransmitters() != 0)
+				System.out.println(infos[i].getName() + "\t" + infos[i].getDescription());
+		}
+	}
+
+	// the first device with a transmitter whose name contains name
+	static MidiDevice find(String name) throws MidiUnavailableException {
+		MidiDevice.Info[] infos = MidiSystem.getMidiDeviceInfo();
+		for (int i = 0; i < infos.length; i++) {
+			MidiDevice device = MidiSystem.getMidiDevice(infos[i]);
+			if (infos[i].getName().contains(name) && (device.getMaxTransmitters() != 0)
+				&& !(device instanceof Sequencer))
+				return device;
+		}
+		throw new MidiUnavailableException("No MIDI input called " + name);
+	}
+
+	static void usage() {
+		System.err.println("Usage: java LiveMidi [-limit seconds] [-channel n] [-verbose] -file piece.mid");
+		System.err.println("       java LiveMidi [-limit seconds] [-channel n] [-verbose] -device name");
+		System.err.println("       java LiveMidi -list");
+		System.exit(1);
+	}
+
+	public static void main(String argv[]) throws Exception {
+		double limit = MidiSource.defaultLimitSeconds;
+		int channel = -1;
+		boolean verbose = false;
+		String file = null, device = null;
+		for (int i = 0; i < argv.length; i++) {
+			if (argv[i].equals("-list")) {
+				list();
+				return;
+			} else if (argv[i].equals("-limit") && (i + 1 < argv.length))
+				limit = Double.parseDouble(argv[++i]);
+			else if (argv[i].equals("-channel") && (i + 1 < argv.length))
+				channel = Integer.parseInt(argv[++i]);
+			else if (argv[i].equals("-verbose"))
+				verbose = true;
+			else if (argv[i].equals("-file") && (i + 1 < argv.length))
+				file = argv[++i];
+			else if (argv[i].equals("-device") && (i + 1 < argv.length))
+				device = argv[++i];
+			else
+				usage();
+		}
+		if ((file == null) == (device == null))
+			usage();
+
+		OutcomeCounts counts = new OutcomeCounts();
+		ProjectionStream.Listener listener = verbose ? new Printer(counts) : counts;
+		LiveMidi live = new LiveMidi(new ProjectionStream(Math.round(limit*1000000), listener), 4096);
+		live.setChannel(channel);
+		live.start();
+
+		if (file != null) {
+			// a sequencer that isn't connected to the synthesizer plays only to us
+			Sequencer sequencer = MidiSystem.getSequencer(false);
+			sequencer.open();
+			sequencer.setSequence(MidiSystem.getSequence(new File(file)));
+			sequencer.getTransmitter().setReceiver(live);
+			sequencer.start();
+			while (sequencer.isRunning())
+				Thread.sleep(100);
+			sequencer.close();
+		} else {
+			MidiDevice input = find(device);
+			input.open();
+			input.getTransmitter().setReceiver(live);
+			System.err.println("Listening to " + input.getDeviceInfo().getName() + "; press Enter to stop");
+			System.in.read();
+			input.close();
+		}
+
+		live.stop();
+		counts.print(System.out);
+		live.report(System.out);
+		// the MIDI system leaves threads of its own running
+		System.exit(0);
+	}
+}
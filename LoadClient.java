@@ -0,0 +1,191 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*
+ * Loads a ClassifyServer and reports how many requests it answered a
+ *  second and how long they took.  Each thread keeps one connection open
+ *  and sends the same request over it, again and again, as fast as the
+ *  answers come back.  The performances are random but reproducible.
+ *
+ *  Usage: java LoadClient [-port n] [-threads n] [-seconds s] [-batch n] [-texts]
+ */
+public class LoadClient implements Runnable {
+	byte[] request;
+	int port;
+	volatile boolean running = true;
+	LatencyHistogram latencies = new LatencyHistogram(1000000);
+	long bytes = 0;
+	long errors = 0;
+	Exception failure = null;
+
+	public LoadClient(int port, byte[] request) {
+		if (null == request) {
+			throw new IllegalArgumentException("The LoadClient class was passed a null byte[] object");
+		}
+
+		this.port = port;
+		this.request = request;
+	}
+
+	// a request classifying batch performances of three sounds each
+	static byte[] request(int port, int batch, boolean texts) {
+		Random random = new Random(1998);
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < batch; i++) {
+			long time = 0;
+			for (int j = 0; j < 3; j++) {
+				long onset = time + 1 + random.nextInt(2*Projection.unitLength);
+				long offset = onset + 1 + random.nextInt(Projection.unitLength);
+				body.append(onset).append(' ').append(offset).append('\n');
+				time = offset;
+			}
+		}
+		byte[] content = body.toString().getBytes(StandardCharsets.UTF_8);
+		String header = "POST /classify" + (texts ? "?texts=1" : "") + " HTTP/1.1\r\n"
+			+ "Host: localhost:" + port + "\r\n"
+			+ "Content-Type: text/plain\r\n"
+			+ "Content-Length: " + content.length + "\r\n\r\n";
+		byte[] head = header.getBytes(StandardCharsets.US_ASCII);
+		byte[] request = Arrays.copyOf(head, head.length + content.length);
+		System.arraycopy(content, 0, request, head.length, content.length);
+		return request;
+	}
+
+	public void run() {
+		try {
+			Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+			socket.setTcpNoDelay(true);
+			OutputStream out = socket.getOutputStream();
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			byte[] body = new byte[64*1024];
+			while (running) {
+				long start = System.nanoTime();
+				out.write(request);
+				out.flush();
+				int length = readHeaders(in);
+				if (length < 0) {
+					errors++;
+					break;
+				}
+				if (body.length < length)
+					body = new byte[length];
+				for (int read = 0; read < length; ) {
+					int n = in.read(body, read, length - read);
+					if (n < 0)
+						throw new EOFException("The server closed the connection");
+					read += n;
+				}
+				latencies.record(System.nanoTime() - start);
+				bytes += length;
+			}
+			socket.close();
+		} catch (IOException e) {
+			failure = e;
+		}
+	}
+
+	/* Read the status line and headers of a reply, and return the length
+	 *  of its body, or -1 if it wasn't a 200.
+	 */
+	static int readHeaders(InputStream in) throws IOException {
+		boolean ok = false;
+		int length = 0;
+		StringBuilder line = new StringBuilder();
+		boolean first = true;
+		while (true) {
+			int b = in.read();
+			if (b < 0)
+				throw new EOFException("The server closed the connection");
+			if (b == '\r')
+				continue;
+			if (b != '\n') {
+				line.append((char)b);
+				continue;
+			}
+			if (line.length() == 0)
+				return ok ? length : -1;
+			String header = line.toString();
+			if (first)
+				ok = header.startsWith("HTTP/1.1 200");
+			else if (header.regionMatches(true, 0, "Content-Length:", 0, 15))
+				length = Integer.parseInt(header.substring(15).trim());
+			first = false;
+			line.setLength(0);
+		}
+	}
+
+	public static void main(String argv[]) throws Exception {
+		int port = ClassifyServer.defaultPort;
+		int threads = 8;
+		double seconds = 10;
+		int batch = 1;
+		boolean texts = false;
+		for (int i = 0; i < argv.length; i++) {
+			if (argv[i].equals("-port") && (i + 1 < argv.length))
+				port = Integer.parseInt(argv[++i]);
+			else if (argv[i].equals("-threads") && (i + 1 < argv.length))
+				threads = Integer.parseInt(argv[++i]);
+			else if (argv[i].equals("-seconds") && (i + 1 < argv.length))
+				seconds = Double.parseDouble(argv[++i]);
+			else if (argv[i].equals("-batch") && (i + 1 < argv.length))
+				batch = Integer.parseInt(argv[++i]);
+			else if (argv[i].equals("-texts"))
+				texts = true;
+			else {
+				System.err.println("Usage: java LoadClient [-port n] [-threads n] [-seconds s] [-batch n] [-texts]");
+				System.exit(1);
+			}
+		}
+
+		byte[] request = request(port, batch, texts);
+		LoadClient[] clients = new LoadClient[threads];
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			clients[i] = new LoadClient(port, request);
+			workers[i] = new Thread(clients[i], "LoadClient-" + i);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < threads; i++)
+			workers[i].start();
+		Thread.sleep(Math.round(seconds*1000));
+		for (int i = 0; i < threads; i++)
+			clients[i].running = false;
+		for (int i = 0; i < threads; i++)
+			workers[i].join();
+		double elapsed = (System.nanoTime() - start)/1e9;
+
+		LatencyHistogram all = new LatencyHistogram(1000000);
+		long bytes = 0, errors = 0;
+		for (int i = 0; i < threads; i++) {
+			all.add(clients[i].latencies);
+			bytes += clients[i].bytes;
+			errors += clients[i].errors;
+			if (clients[i].failure != null)
+				System.err.println(workers[i].getName() + ": " + clients[i].failure);
+		}
+		System.out.println("requests\t" + all.getCount());
+		System.out.println("errors\t" + errors);
+		System.out.println("requests/s\t" + Math.round(all.getCount()/elapsed));
+		System.out.println("performances/s\t" + Math.round(all.getCount()*batch/elapsed));
+		System.out.println("MB/s received\t" + String.format("%.1f", bytes/elapsed/1e6));
+		all.print(System.out);
+	}
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import javax.sound.midi.*;
+
+/*
+ * Reads the sounds of a Standard MIDI File, in the time scale of the demo:
+ *  CoordinateArea.unitLength units make up the limit of mensural
+ *  determinacy, which is taken to last limitSeconds.  The file is read a
+ *  little at a time, with one cursor per track, so the memory it takes
+ *  doesn't grow with the length of the file.  (MidiSystem.getSequence
+ *  would read the whole thing in.)
+ *
+ *  Notes that begin together make one sound, which lasts until all of
+ *  them are released or the next sound begins, whichever comes first.
+ *
+ *  Usage: java MidiSource file.mid [limitSeconds]
+ */
+public class MidiSource {
+	public final static double defaultLimitSeconds = 2.0;
+	final static int defaultTempo = 500000; // microseconds per quarter note, if the file doesn't say
+
+	File file;
+	long limitMicros; // how long the limit lasts
+	int channel = -1; // the only channel we listen to, or -1 for all of them
+
+	// what a track's cursor found
+	final static int NOTE_ON = 0;
+	final static int NOTE_OFF = 1;
+	final static int TEMPO = 2;
+	final static int OTHER = 3;
+	final static int END = 4;
+
+	// reads one track a buffer at a time, from its own place in the file
+	static class Track {
+		FileChannel channel;
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		long position; // where in the file the buffer ends
+		long end; // where the track ends
+		long tick = 0; // when the event found happens
+		int status = 0; // the running status
+		int type; // what the event found is
+		int data1, data2; // and its data
+		int eventChannel;
+
+		Track(FileChannel channel, long start, long length) {
+			this.channel = channel;
+			this.position = start;
+			this.end = start + length;
+			buffer.limit(0);
+		}
+
+		int read() throws IOException {
+			if (!buffer.hasRemaining()) {
+				if (position >= end)
+					throw new EOFException("A track ends in the middle of an event");
+				buffer.clear();
+				buffer.limit((int)Math.min(buffer.capacity(), end - position));
+				while (buffer.hasRemaining())
+					if (channel.read(buffer, position + buffer.position()) < 0)
+						throw new EOFException("The file ends in the middle of a track");
+				position += buffer.limit();
+				buffer.flip();
+			}
+			return buffer.get() & 0xff;
+		}
+
+		long readVariable() throws IOException {
+			long value = 0;
+			int b;
+			do {
+				b = read();
+				value = (value << 7) | (b & 0x7f);
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+		void skip(long count) throws IOException {
+			for (long i = 0; i < count; i++)
+				read();
+		}
+
+		// find the next event, and when it happens
+		void advance() throws IOException {
+			if ((position >= end) && !buffer.hasRemaining()) {
+				type = END;
+				return;
+			}
+			tick += readVariable();
+			int b = read();
+			if ((b == 0xf0) || (b == 0xf7)) {
+				// a system exclusive message, which we don't need
+				skip(readVariable());
+				type = OTHER;
+				return;
+			}
+			if (b == 0xff) {
+				int meta = read();
+				long length = readVariable();
+				if ((meta == 0x51) && (length == 3)) {
+					data1 = (read() << 16) | (read() << 8) | read();
+					type = TEMPO;
+				} else if (meta == 0x2f) {
+					skip(length);
+					type = END;
+				} else {
+					skip(length);
+					type = OTHER;
+				}
+				return;
+			}
+			if ((b & 0x80) != 0) {
+				status = b;
+				data1 = read();
+			} else if (status == 0)
+				throw new IOException("A track uses running status before any status");
+			else
+				data1 = b; // running status: that was the first data byte
+			int command = status & 0xf0;
+			eventChannel = status & 0x0f;
+			if ((command == ShortMessage.PROGRAM_CHANGE) || (command == ShortMessage.CHANNEL_PRESSURE)) {
+				type = OTHER;
+				return;
+			}
+			data2 = read();
+			if ((command == ShortMessage.NOTE_ON) && (data2 > 0))
+				type = NOTE_ON;
+			else if ((command == ShortMessage.NOTE_ON) || (command == ShortMessage.NOTE_OFF))
+				type = NOTE_OFF;
+			else
+				type = OTHER;
+		}
+	}
+
+	public MidiSource(File file, double limitSeconds) {
+		if (null == file) {
+			throw new IllegalArgumentException("The MidiSource class was passed a null File object");
+		}
+
+		this.file = file;
+		this.limitMicros = Math.round(limitSeconds*1000000);
+	}
+
+	// listen only to channel (0-15), or to all of them if it's -1
+	public void setChannel(int channel) {
+		this.channel = channel;
+	}
+
+	// convert microseconds into the demo's units
+	public long toUnits(long micros) {
+		return micros*Projection.unitLength/limitMicros;
+	}
+
+	public long getLimit() {
+		return Projection.unitLength;
+	}
+
+	/* Read the file from beginning to end, handing each sound to listener
+	 *  as soon as we know where it ends.
+	 */
+	public void read(SoundListener listener) throws IOException, InvalidMidiDataException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			read(raf.getChannel(), listener);
+		} finally {
+			raf.close();
+		}
+	}
+
+	void read(FileChannel in, SoundListener listener) throws IOException, InvalidMidiDataException {
+		// the header: MThd, its length, the format, the number of tracks and the division
+		ByteBuffer header = ByteBuffer.allocate(14);
+		readFully(in, header, 0);
+		if (header.getInt(0) != 0x4d546864)
+			throw new InvalidMidiDataException(file + " is not a Standard MIDI File");
+		long headerLength = header.getInt(4) & 0xffffffffL;
+		int trackCount = header.getShort(10) & 0xffff;
+		int division = header.getShort(12);
+
+		// where each track is
+		Track[] tracks = new Track[trackCount];
+		ByteBuffer chunk = ByteBuffer.allocate(8);
+		long at = 8 + headerLength;
+		int found = 0;
+		while ((found < trackCount) && (at + 8 <= in.size())) {
+			chunk.clear();
+			readFully(in, chunk, at);
+			long length = chunk.getInt(4) & 0xffffffffL;
+			if (chunk.getInt(0) == 0x4d54726b) // MTrk
+				tracks[found++] = new Track(in, at + 8, length);
+			at += 8 + length;
+		}
+		if (found < trackCount)
+			throw new InvalidMidiDataException(file + " has fewer tracks than it says");
+		for (int i = 0; i < trackCount; i++)
+			tracks[i].advance();
+
+		// how ticks become microseconds
+		long tempo = defaultTempo;
+		long tempoTick = 0; // the tick of the last change of tempo
+		long tempoMicros = 0; // and when it happened
+		double ticksPerSecond = 0; // for SMPTE divisions, which don't use tempo
+		if (division < 0)
+			ticksPerSecond = -(division >> 8)*(division & 0xff);
+		int resolution = division & 0x7fff;
+
+		// the sound we're waiting to finish
+		long onset = -1; // when it began, or -1 if there isn't one
+		long offset = -1; // when all its notes were released, or -1 if they aren't yet
+		int sounding = 0; // how many notes are sounding
+		long last = 0; // the time of the latest event
+
+		while (true) {
+			// the track with the earliest event goes next
+			Track next = null;
+			for (int i = 0; i < trackCount; i++)
+				if ((tracks[i].type != END) && ((next == null) || (tracks[i].tick < next.tick)))
+					next = tracks[i];
+			if (next == null)
+				break;
+
+			long micros;
+			if (division < 0)
+				micros = Math.round(next.tick*1000000/ticksPerSecond);
+			else
+				micros = tempoMicros + (next.tick - tempoTick)*tempo/resolution;
+			long time = toUnits(micros);
+			last = Math.max(last, time);
+
+			if (next.type == TEMPO) {
+				tempoMicros = micros;
+				tempoTick = next.tick;
+				tempo = next.data1;
+			} else if ((channel < 0) || (next.eventChannel == channel)) {
+				if (next.type == NOTE_ON) {
+					if ((onset >= 0) && (time > onset)) {
+						// a new sound begins, so the last one is over
+						if (finish(listener, onset, offset, time)) {
+							onset = time;
+							offset = -1;
+						}
+					} else if (onset < 0) {
+						onset = time;
+						offset = -1;
+					}
+					sounding++;
+				} else if (next.type == NOTE_OFF) {
+					if (sounding > 0)
+						sounding--;
+					if ((sounding == 0) && (onset >= 0))
+						offset = time;
+				}
+			}
+			next.advance();
+		}
+		if (onset >= 0)
+			finish(listener, onset, (offset >= 0) ? offset : last, -1);
+	}
+
+	/* Hand on the sound from onset to offset, ending it before the next one
+	 *  begins (at next, or -1 if there is no next one).  If there's no room
+	 *  between them, the next notes join this sound instead; then we
+	 *  return false.
+	 */
+	static boolean finish(SoundListener listener, long onset, long offset, long next) {
+		if (offset < 0)
+			offset = next;
+		if (offset <= onset)
+			offset = onset + 1;
+		if (next >= 0) {
+			if (next - onset < 2)
+				return false;
+			if (offset >= next)
+				offset = next - 1;
+		}
+		listener.sound(onset, offset);
+		return true;
+	}
+
+	static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining())
+			if (in.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException("The file ends too soon");
+	}
+
+	public static void main(String argv[]) throws Exception {
+		if (argv.length < 1) {
+			System.err.println("Usage: java MidiSource file.mid [limitSeconds]");
+			System.exit(1);
+		}
+		double limit = defaultLimitSeconds;
+		if (argv.length > 1)
+			limit = Double.parseDouble(argv[1]);
+
+		MidiSource source = new MidiSource(new File(argv[0]), limit);
+		OutcomeCounts counts = new OutcomeCounts();
+		source.read(new ProjectionStream(source.getLimit(), counts));
+		counts.print(System.out);
+	}
+}
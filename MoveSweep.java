@@ -0,0 +1,64 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Sweeps the mouse back and forth across the canvas at each stage of a
+ *  performance, with no display, and prints how many bytes the mouseMove
+ *  code allocated along the way.  It should always be 0.
+ *
+ *  Usage: java -Djava.awt.headless=true MoveSweep [sweeps]
+ */
+public class MoveSweep {
+	public static void main(String argv[]) {
+		int sweeps = 1000;
+		if (argv.length > 0)
+			sweeps = Integer.parseInt(argv[0]);
+		if (!AllocationCounter.isSupported()) {
+			System.err.println("This JVM can't count allocations");
+			System.exit(1);
+		}
+
+		Rhythm rhythm = new Rhythm();
+		rhythm.initPoints();
+		CoordinateArea area = new CoordinateArea(rhythm);
+		rhythm.coordinateArea = area;
+
+		// the clicks that take us through each stage: begin, end, begin, end
+		int[] clicks = { 0, 100, 150, 250 };
+		for (int stage = 0; stage <= clicks.length; stage++) {
+			// let the JIT settle on this stage before counting
+			sweep(area, sweeps);
+			area.countAllocations = true;
+			area.moves = area.moveBytes = 0;
+			sweep(area, sweeps);
+			area.countAllocations = false;
+			System.out.println("after " + stage + " clicks: " + area.moves + " moves, "
+							   + area.moveBytes + " bytes allocated");
+			if (stage < clicks.length)
+				area.handleMouseDown(clicks[stage], 50);
+		}
+	}
+
+	// move across the whole canvas and back, sweeps times
+	static void sweep(CoordinateArea area, int sweeps) {
+		for (int i = 0; i < sweeps; i++) {
+			for (int x = 0; x <= 400; x++)
+				area.handleMouseMove(x, 50);
+			for (int x = 400; x >= 0; x--)
+				area.handleMouseMove(x, 50);
+		}
+	}
+}
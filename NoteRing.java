@@ -0,0 +1,112 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.*;
+
+/*
+ * A fixed ring of timestamped MIDI events, for exactly one thread putting
+ *  them in and one other thread taking them out.  Each side owns its own
+ *  counter and only ever reads the other's, so neither has to lock or
+ *  wait, and once the arrays are made nothing is allocated.  The event is
+ *  the status, first and second data bytes of a short message, packed
+ *  into an int.
+ */
+public class NoteRing {
+	long[] times; // when each event arrived, from System.nanoTime
+	int[] events; // and what it was
+	int mask; // the capacity, less one
+	AtomicLong head = new AtomicLong(); // the next slot to take from
+	AtomicLong tail = new AtomicLong(); // the next slot to put into
+	long cachedHead = 0; // the producer's last look at head
+	volatile long dropped = 0; // events that found the ring full (only the producer counts them)
+
+	// capacity is rounded up to a power of two
+	public NoteRing(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The NoteRing class was passed a capacity less than 1");
+		}
+
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		times = new long[size];
+		events = new int[size];
+		mask = size - 1;
+	}
+
+	static int pack(int status, int data1, int data2) {
+		return ((status & 0xff) << 16) | ((data1 & 0xff) << 8) | (data2 & 0xff);
+	}
+
+	static int status(int event) {
+		return event >>> 16;
+	}
+
+	static int data1(int event) {
+		return (event >>> 8) & 0xff;
+	}
+
+	static int data2(int event) {
+		return event & 0xff;
+	}
+
+	/* Put an event in (producer only).  If the consumer has fallen a whole
+	 *  ring behind, the event is dropped and we return false.
+	 */
+	public boolean offer(long time, int event) {
+		long t = tail.get();
+		if (t - cachedHead > mask) {
+			cachedHead = head.get();
+			if (t - cachedHead > mask) {
+				dropped++;
+				return false;
+			}
+		}
+		int i = (int)(t & mask);
+		times[i] = time;
+		events[i] = event;
+		// the slot is written before the consumer can see the new tail
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	// is there anything to take (consumer only)?
+	public boolean isEmpty() {
+		return head.get() == tail.get();
+	}
+
+	// the time and event at the front (consumer only; the ring mustn't be empty)
+	public long peekTime() {
+		return times[(int)(head.get() & mask)];
+	}
+
+	public int peekEvent() {
+		return events[(int)(head.get() & mask)];
+	}
+
+	// and let the producer have the slot back
+	public void remove() {
+		head.lazySet(head.get() + 1);
+	}
+
+	public int capacity() {
+		return mask + 1;
+	}
+
+	public long getDropped() {
+		return dropped;
+	}
+}
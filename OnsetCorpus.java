@@ -0,0 +1,308 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*
+ * A corpus of performances in a compact binary form, read through memory
+ *  mapping so that nothing is parsed or copied: any sound of any piece can
+ *  be read straight from the file.  The layout (all little-endian) is
+ *
+ *    header  the magic number "ONSC", the version, the number of pieces,
+ *            a spare int, and the offsets of the index and the names
+ *    sounds  the onset and offset of every sound, as two longs, piece
+ *            after piece
+ *    index   for each piece: its first sound, how many sounds it has, and
+ *            where its name is among the names (an offset and a length)
+ *    names   the pieces' names, in UTF-8
+ *
+ *  The sounds come first so the file can be written as they arrive; the
+ *  index goes on the end once we know it.  Times are in the demo's units.
+ *
+ *  Usage: java OnsetCorpus convert out.onc dir-or-file...
+ *         java OnsetCorpus list corpus.onc
+ *         java OnsetCorpus analyze corpus.onc [piece]
+ */
+public class OnsetCorpus implements Closeable {
+	final static int MAGIC = 0x43534e4f; // "ONSC", read little-endian
+	final static int VERSION = 1;
+	final static int HEADER = 32; // bytes
+	final static int ENTRY = 24; // bytes per piece in the index
+	final static int CHUNK_SHIFT = 26; // each mapping holds 1 << 26 sounds (1GB)
+
+	FileChannel channel;
+	LongBuffer[] sounds; // the sounds, one mapping per chunk of them
+	ByteBuffer index;
+	ByteBuffer names;
+	int pieceCount;
+
+	OnsetCorpus(FileChannel channel) throws IOException {
+		this.channel = channel;
+		ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		if ((header.getInt(0) != MAGIC) || (header.getInt(4) != VERSION))
+			throw new IOException("Not an onset corpus");
+		pieceCount = header.getInt(8);
+		long indexAt = header.getLong(16);
+		long namesAt = header.getLong(24);
+		if ((pieceCount < 0) || (indexAt < HEADER) || ((indexAt - HEADER)%16 != 0)
+			|| (indexAt + (long)ENTRY*pieceCount > namesAt) || (namesAt > channel.size()))
+			throw new IOException("A damaged onset corpus");
+
+		long soundCount = (indexAt - HEADER)/16;
+		int chunks = (int)((soundCount + (1L << CHUNK_SHIFT) - 1) >>> CHUNK_SHIFT);
+		sounds = new LongBuffer[chunks];
+		for (int i = 0; i < chunks; i++) {
+			long first = ((long)i) << CHUNK_SHIFT;
+			long count = Math.min(1L << CHUNK_SHIFT, soundCount - first);
+			sounds[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER + 16*first, 16*count)
+				.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+		}
+		index = channel.map(FileChannel.MapMode.READ_ONLY, indexAt, (long)ENTRY*pieceCount)
+			.order(ByteOrder.LITTLE_ENDIAN);
+		names = channel.map(FileChannel.MapMode.READ_ONLY, namesAt, channel.size() - namesAt);
+	}
+
+	public static OnsetCorpus open(File file) throws IOException {
+		FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+		boolean opened = false;
+		try {
+			OnsetCorpus corpus = new OnsetCorpus(channel);
+			opened = true;
+			return corpus;
+		} finally {
+			if (!opened)
+				channel.close();
+		}
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	public int getPieceCount() {
+		return pieceCount;
+	}
+
+	public long getSoundCount(int piece) {
+		return index.getLong(ENTRY*piece + 8);
+	}
+
+	public String getName(int piece) {
+		int at = index.getInt(ENTRY*piece + 16);
+		int length = index.getInt(ENTRY*piece + 20);
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = names.get(at + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// the onset and offset of the i-th sound of a piece
+	public long getOnset(int piece, long i) {
+		long which = index.getLong(ENTRY*piece) + i;
+		return sounds[(int)(which >>> CHUNK_SHIFT)].get((int)(2*(which & ((1L << CHUNK_SHIFT) - 1))));
+	}
+
+	public long getOffset(int piece, long i) {
+		long which = index.getLong(ENTRY*piece) + i;
+		return sounds[(int)(which >>> CHUNK_SHIFT)].get((int)(2*(which & ((1L << CHUNK_SHIFT) - 1)) + 1));
+	}
+
+	/* Hand every sound of a piece to listener.  The mappings are only ever
+	 *  read at absolute positions, so any number of threads can do this at
+	 *  once.
+	 */
+	public void read(int piece, SoundListener listener) {
+		long first = index.getLong(ENTRY*piece);
+		long count = index.getLong(ENTRY*piece + 8);
+		long mask = (1L << CHUNK_SHIFT) - 1;
+		for (long which = first; which < first + count; which++) {
+			LongBuffer chunk = sounds[(int)(which >>> CHUNK_SHIFT)];
+			int at = (int)(2*(which & mask));
+			listener.sound(chunk.get(at), chunk.get(at + 1));
+		}
+	}
+
+	/* Writes a corpus, one sound at a time: begin a piece, hand it its
+	 *  sounds (it's a SoundListener), and begin the next; close finishes
+	 *  the file, and abort gives it up.  dropPiece leaves out the piece
+	 *  begun last, as if it had never begun.
+	 */
+	public static class Builder implements SoundListener, Closeable {
+		File file;
+		FileChannel channel;
+		ByteBuffer buffer = ByteBuffer.allocate(64*1024).order(ByteOrder.LITTLE_ENDIAN);
+		long position = HEADER;
+		long soundCount = 0;
+		// the index, kept until the end
+		List<long[]> pieces = new ArrayList<long[]>(); // first sound and count
+		ByteArrayOutputStream names = new ByteArrayOutputStream();
+		List<int[]> nameSpans = new ArrayList<int[]>();
+
+		public Builder(File file) throws IOException {
+			this.file = file;
+			channel = new RandomAccessFile(file, "rw").getChannel();
+			channel.truncate(0);
+		}
+
+		public void beginPiece(String name) {
+			pieces.add(new long[] { soundCount, 0 });
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			nameSpans.add(new int[] { names.size(), bytes.length });
+			names.write(bytes, 0, bytes.length);
+		}
+
+		public void sound(long onset, long offset) {
+			if (pieces.isEmpty())
+				throw new IllegalStateException("A sound came before any piece began");
+			try {
+				if (buffer.remaining() < 16)
+					flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			buffer.putLong(onset);
+			buffer.putLong(offset);
+			soundCount++;
+			pieces.get(pieces.size() - 1)[1]++;
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				position += channel.write(buffer, position);
+			buffer.clear();
+		}
+
+		public void dropPiece() throws IOException {
+			long[] piece = pieces.remove(pieces.size() - 1);
+			int[] span = nameSpans.remove(nameSpans.size() - 1);
+			flush();
+			soundCount = piece[0];
+			position = HEADER + 16*soundCount; // its sounds get written over
+			byte[] kept = names.toByteArray();
+			names.reset();
+			names.write(kept, 0, span[0]);
+		}
+
+		public void close() throws IOException {
+			flush();
+			long indexAt = position;
+			for (int i = 0; i < pieces.size(); i++) {
+				if (buffer.remaining() < ENTRY)
+					flush();
+				buffer.putLong(pieces.get(i)[0]);
+				buffer.putLong(pieces.get(i)[1]);
+				buffer.putInt(nameSpans.get(i)[0]);
+				buffer.putInt(nameSpans.get(i)[1]);
+			}
+			flush();
+			long namesAt = position;
+			position += channel.write(ByteBuffer.wrap(names.toByteArray()), position);
+			channel.truncate(position); // a dropped piece may have run past here
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(pieces.size()).putInt(0);
+			header.putLong(indexAt).putLong(namesAt);
+			header.flip();
+			channel.write(header, 0);
+			channel.close();
+		}
+
+		// gives up on the corpus: no header is written, and the file goes
+		public void abort() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// it's going anyway
+			}
+			file.delete();
+		}
+	}
+
+	// convert MIDI and text onset files into a corpus, one piece per file
+	static void convert(File out, String[] roots, double limitSeconds) throws Exception {
+		File[] files = CorpusAnalyzer.find(roots);
+		Builder writer = new Builder(out);
+		int failures = 0;
+		boolean done = false;
+		try {
+			for (int i = 0; i < files.length; i++) {
+				String name = files[i].getName().toLowerCase();
+				if (name.endsWith(".onc"))
+					continue;
+				writer.beginPiece(files[i].getPath());
+				try {
+					if (name.endsWith(".mid") || name.endsWith(".midi"))
+						new MidiSource(files[i], limitSeconds).read(writer);
+					else
+						OnsetReader.read(files[i], writer);
+				} catch (UncheckedIOException e) {
+					throw e.getCause(); // writing the corpus failed, not reading the file
+				} catch (Exception e) {
+					// one bad file shouldn't stop the rest, but it isn't a piece
+					failures++;
+					System.err.println(files[i] + ": " + e.getMessage());
+					writer.dropPiece();
+				}
+			}
+			writer.close();
+			done = true;
+		} finally {
+			// only a whole corpus gets a header; half of one would read as whole
+			if (!done)
+				writer.abort();
+		}
+		System.err.println("wrote " + writer.pieces.size() + " pieces to " + out
+						   + " (" + failures + " failed)");
+	}
+
+	public static void main(String argv[]) throws Exception {
+		if ((argv.length >= 3) && argv[0].equals("convert")) {
+			convert(new File(argv[1]), Arrays.copyOfRange(argv, 2, argv.length),
+					MidiSource.defaultLimitSeconds);
+		} else if ((argv.length == 2) && argv[0].equals("list")) {
+			OnsetCorpus corpus = open(new File(argv[1]));
+			for (int i = 0; i < corpus.getPieceCount(); i++)
+				System.out.println(i + "\t" + corpus.getSoundCount(i) + "\t" + corpus.getName(i));
+			corpus.close();
+		} else if ((argv.length >= 2) && argv[0].equals("analyze")) {
+			OnsetCorpus corpus = open(new File(argv[1]));
+			OutcomeCounts counts = new OutcomeCounts();
+			ProjectionStream stream = new ProjectionStream(Projection.unitLength, counts);
+			int from = 0, to = corpus.getPieceCount();
+			if (argv.length > 2) {
+				from = Integer.parseInt(argv[2]);
+				to = from + 1;
+			}
+			for (int i = from; i < to; i++) {
+				stream.reset();
+				corpus.read(i, stream);
+			}
+			counts.print(System.out);
+			corpus.close();
+		} else {
+			System.err.println("Usage: java OnsetCorpus convert out.onc dir-or-file...");
+			System.err.println("       java OnsetCorpus list corpus.onc");
+			System.err.println("       java OnsetCorpus analyze corpus.onc [piece]");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+
+/*
+ * Reads performances written out as text: one sound per line, its onset
+ *  and then its offset, in the demo's units (CoordinateArea.unitLength of
+ *  them to the limit).  Anything after a # is a comment.  The numbers are
+ *  parsed straight from the bytes, so no Strings are made along the way.
+ */
+public class OnsetReader {
+	InputStream in;
+	byte[] buffer = new byte[8192];
+	int position = 0;
+	int count = 0;
+	long line = 1; // for complaining about
+
+	public OnsetReader(InputStream in) {
+		if (null == in) {
+			throw new IllegalArgumentException("The OnsetReader class was passed a null InputStream object");
+		}
+
+		this.in = in;
+	}
+
+	// read every sound in a file
+	public static void read(File file, SoundListener listener) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			new OnsetReader(in).read(listener);
+		} finally {
+			in.close();
+		}
+	}
+
+	// read every sound to the end of the input
+	public void read(SoundListener listener) throws IOException {
+		long[] pair = new long[2];
+		while (next(pair))
+			listener.sound(pair[0], pair[1]);
+	}
+
+	/* read the next sound into pair (onset, offset); false at the end of
+	 *  the input
+	 */
+	public boolean next(long[] pair) throws IOException {
+		int found = 0;
+		while (true) {
+			int b = read();
+			if (b < 0) {
+				if (found == 0)
+					return false;
+				if (found == 2)
+					return true; // the last line needn't end with a newline
+				throw new IOException("Line " + line + " has an onset but no offset");
+			}
+			if (b == '\n') {
+				if (found == 1)
+					throw new IOException("Line " + line + " has an onset but no offset");
+				line++;
+				if (found == 2)
+					return true;
+			} else if (b == '#') {
+				while ((b = read()) >= 0 && (b != '\n'))
+					;
+				if (b == '\n')
+					position--; // let the newline end the line as usual
+			} else if ((b == '-') || ((b >= '0') && (b <= '9'))) {
+				if (found == 2)
+					throw new IOException("Line " + line + " has more than two numbers");
+				pair[found++] = number(b);
+			} else if ((b != ' ') && (b != '\t') && (b != '\r') && (b != ','))
+				throw new IOException("Line " + line + " has something other than numbers on it");
+		}
+	}
+
+	// can more be read without waiting for it?
+	public boolean ready() throws IOException {
+		return (position < count) || (in.available() > 0);
+	}
+
+	// the rest of a number that began with first
+	long number(int first) throws IOException {
+		boolean negative = (first == '-');
+		long value = negative ? 0 : first - '0';
+		int b;
+		while (((b = read()) >= '0') && (b <= '9'))
+			value = 10*value + (b - '0');
+		if (b >= 0)
+			position--; // put back whatever ended the number
+		return negative ? -value : value;
+	}
+
+	int read() throws IOException {
+		if (position == count) {
+			count = in.read(buffer);
+			position = 0;
+			if (count <= 0) {
+				count = 0;
+				return -1;
+			}
+		}
+		return buffer[position++] & 0xff;
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+
+// Counts how often each message code comes out of a ProjectionStream
+public class OutcomeCounts implements ProjectionStream.Listener {
+	public final static int CODES = 27; // the message codes run from 0 to 26
+	long[] counts = new long[CODES];
+	long rejected = 0; // events that didn't follow the one before
+
+	public void outcome(long event, int code, long begin, long end) {
+		if (code == Projection.REJECTED)
+			rejected++;
+		else if ((code >= 0) && (code < CODES))
+			counts[code]++;
+	}
+
+	// add in the counts from other
+	public void add(OutcomeCounts other) {
+		for (int i = 0; i < CODES; i++)
+			counts[i] += other.counts[i];
+		rejected += other.rejected;
+	}
+
+	public long getCount(int code) {
+		return counts[code];
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	// how many outcomes were counted in all
+	public long getTotal() {
+		long total = 0;
+		for (int i = 0; i < CODES; i++)
+			total += counts[i];
+		return total;
+	}
+
+	// one line per code that came out at all
+	public void print(PrintStream out) {
+		for (int i = 0; i < CODES; i++)
+			if (counts[i] != 0)
+				out.println(i + "\t" + counts[i]);
+		if (rejected != 0)
+			out.println("rejected\t" + rejected);
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * Once the second sound has ended, where the third begins decides
+ *  everything that's left, so we can show it before the click: every x
+ *  the next click could land on is shaded by the message it would bring,
+ *  accel. (19), right on time (20), hiatus (21), the parenthesized
+ *  beginning (22), rall. (24) or a projection not realized (25).  The
+ *  codes come from Projection.thirdBegin, as they do in handleMouseDown.
+ *
+ *  The shading is worked out on the fork/join pool, a run of columns to
+ *  each task, never on the event thread, and kept, for the last few
+ *  placings of the second sound and widths of the canvas.  It's one image,
+ *  drawn into the scene under everything else; since it's the same image
+ *  until the points change, moving the mouse over it costs nothing.
+ */
+public class OutcomeHeatmap {
+	final static int TOP = 35, HEIGHT = 80; // where the shading goes
+	final static int CACHED = 32; // how many heatmaps we keep
+	final static int GRAIN = 64; // the columns a task works out
+	final static int ALPHA = 0x50000000; // how strong the shading is
+	final static int[] colors = new int[27]; // for each code, or 0 for none
+	static {
+		colors[19] = ALPHA | 0xff8000; // accel.
+		colors[20] = ALPHA | 0x00c000; // right on time
+		colors[21] = ALPHA | 0x0000ff; // hiatus
+		colors[22] = ALPHA | 0xa000c0; // a hypothetical beginning
+		colors[24] = ALPHA | 0xe0c000; // rall.
+		colors[25] = ALPHA | 0xff0000; // no realization
+	}
+
+	// what a heatmap depends on
+	static class Key {
+		final int where, end2; // the beginning and end of the second sound
+		final int width;
+		final long limit, tolerance;
+
+		Key(int where, int end2, int width, long limit, long tolerance) {
+			this.where = where;
+			this.end2 = end2;
+			this.width = width;
+			this.limit = limit;
+			this.tolerance = tolerance;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key)o;
+			return (where == k.where) && (end2 == k.end2) && (width == k.width)
+				&& (limit == k.limit) && (tolerance == k.tolerance);
+		}
+
+		public int hashCode() {
+			return ((where*31 + end2)*31 + width)*31 + (int)(limit*31 + tolerance);
+		}
+	}
+
+	// shades columns [from, to) of pixels, which is key.width wide
+	@SuppressWarnings("serial")
+	static class Shade extends RecursiveAction {
+		final Key key;
+		final int[] pixels;
+		final int from, to;
+
+		Shade(Key key, int[] pixels, int from, int to) {
+			this.key = key;
+			this.pixels = pixels;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > GRAIN) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Shade(key, pixels, from, middle), new Shade(key, pixels, middle, to));
+				return;
+			}
+			for (int x = from; x < to; x++) {
+				// the click has to come after the end of the second sound
+				if (x <= key.end2)
+					continue;
+				int code = Projection.thirdBegin(key.where, key.end2, x, key.limit, key.tolerance);
+				if ((code < 0) || (colors[code] == 0))
+					continue;
+				for (int y = 0; y < HEIGHT; y++)
+					pixels[y*key.width + x] = colors[code];
+			}
+		}
+	}
+
+	CoordinateArea area;
+	// the heatmaps we've made, the most recently used last
+	Map<Key, BufferedImage> cache = new LinkedHashMap<Key, BufferedImage>(CACHED, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest) {
+				return size() > CACHED;
+			}
+		};
+	// the heatmap the area wants now (or -1s if none), and the image, once it's ready
+	int where = -1, end2 = -1, width = -1;
+	long limit = -1, tolerance = -1;
+	BufferedImage image = null;
+	long made = 0; // how many we've worked out
+
+	public OutcomeHeatmap(CoordinateArea area) {
+		if (null == area) {
+			throw new IllegalArgumentException("The OutcomeHeatmap class was passed a null CoordinateArea object");
+		}
+
+		this.area = area;
+	}
+
+	/* The image to draw under the diagram now, or null.  This runs on the
+	 *  event thread each time the diagram is drawn; it only looks for (or
+	 *  starts working out) a new heatmap when what it depends on changes.
+	 */
+	public Image current() {
+		Rhythm controller = area.controller;
+		// only between the end of the second sound and the beginning of the third, and by pixels
+		if ((controller.getWherein() != 3) || area.done || (area.times != null)) {
+			where = end2 = -1;
+			image = null;
+			return null;
+		}
+		int w = controller.getPoint(2).x, e = controller.getPoint(3).x, width = area.getWidth();
+		if ((w == where) && (e == end2) && (width == this.width)
+			&& (area.timeLimit == limit) && (area.tolerance == tolerance))
+			return image;
+
+		where = w;
+		end2 = e;
+		this.width = width;
+		limit = area.timeLimit;
+		tolerance = area.tolerance;
+		final Key key = new Key(w, e, width, limit, tolerance);
+		image = cache.get(key);
+		if ((image == null) && (width > 0)) {
+			ForkJoinPool.commonPool().execute(new Runnable() {
+					public void run() {
+						final BufferedImage made = make(key);
+						EventQueue.invokeLater(new Runnable() {
+								public void run() {
+									ready(key, made);
+								}
+							});
+					}
+				});
+		}
+		return image;
+	}
+
+	// a heatmap is ready (on the event thread): keep it, and show it if it's still wanted
+	void ready(Key key, BufferedImage made) {
+		cache.put(key, made);
+		this.made++;
+		if ((key.where == where) && (key.end2 == end2) && (key.width == width)
+			&& (key.limit == limit) && (key.tolerance == tolerance)) {
+			image = made;
+			area.repaint();
+		}
+	}
+
+	// work out the heatmap for key, on the fork/join pool
+	static BufferedImage make(Key key) {
+		BufferedImage image = new BufferedImage(key.width, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		ForkJoinPool.commonPool().invoke(new Shade(key, pixels, 0, key.width));
+		return image;
+	}
+
+	public long getMade() {
+		return made;
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.awt.*;
+import java.awt.event.*;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.Timer;
+
+/*
+ * A little panel of numbers drawn over the diagram, for seeing at a
+ *  glance whether a machine keeps up: frames a second, how long painting
+ *  takes (the last, the average and the longest), how many mouse events
+ *  come in a second, how fast the painting thread allocates, and where
+ *  the demo is (the point and the message).  F3 shows and hides it.
+ *
+ *  The figures are worked out once a second, into char arrays kept for
+ *  the purpose, and drawn with drawChars; nothing here allocates from one
+ *  frame to the next.
+ */
+public class PerformanceHud implements ActionListener {
+	public final static int TOGGLE_KEY = KeyEvent.VK_F3;
+	final static int LINES = 5;
+	final static int WIDTH = 150; // the box the figures go in
+	final static int LINE_HEIGHT = 13;
+	final static long SECOND = 1000000000L;
+
+	CoordinateArea area;
+	volatile boolean visible = false;
+	Timer timer; // redraws the figures every second, even if nothing else does
+
+	// this second's counts, so far
+	long windowStart = -1;
+	long frames = 0;
+	long paintNanos = 0;
+	long maxPaint = 0;
+	AtomicLong inputs = new AtomicLong(); // added to by the event thread, taken by the painting one
+	long allocatedAtStart = 0;
+	long lastPaint = 0;
+
+	// the figures for the last whole second, ready to draw
+	char[][] lines = new char[LINES][32];
+	int[] lengths = new int[LINES];
+
+	public PerformanceHud(CoordinateArea area) {
+		if (null == area) {
+			throw new IllegalArgumentException("The PerformanceHud class was passed a null CoordinateArea object");
+		}
+
+		this.area = area;
+		timer = new Timer(1000, this);
+		format(0, 0, 0, 0, 0);
+	}
+
+	public void setVisible(boolean visible) {
+		this.visible = visible;
+		if (visible) {
+			windowStart = -1; // the figures start over
+			timer.start();
+		}
+		else
+			timer.stop();
+		area.refreshHud();
+	}
+
+	public boolean isVisible() {
+		return visible;
+	}
+
+	public void toggle() {
+		setVisible(!visible);
+	}
+
+	public void actionPerformed(ActionEvent event) {
+		area.refreshHud();
+	}
+
+	// a mouse event came in
+	public void input() {
+		inputs.incrementAndGet();
+	}
+
+	/* A frame was painted, taking nanos; called by whichever thread paints,
+	 *  which must always be the same one.
+	 */
+	public void painted(long nanos) {
+		long now = System.nanoTime();
+		if (windowStart < 0) {
+			windowStart = now;
+			allocatedAtStart = AllocationCounter.allocatedBytes();
+		}
+		frames++;
+		paintNanos += nanos;
+		lastPaint = nanos;
+		if (nanos > maxPaint)
+			maxPaint = nanos;
+
+		long elapsed = now - windowStart;
+		if (elapsed >= SECOND) {
+			long allocated = AllocationCounter.allocatedBytes();
+			format(frames*SECOND/elapsed, paintNanos/frames,
+				   inputs.getAndSet(0)*SECOND/elapsed, (allocated - allocatedAtStart)*SECOND/elapsed, elapsed);
+			windowStart = now;
+			allocatedAtStart = allocated;
+			frames = paintNanos = maxPaint = 0;
+		}
+	}
+
+	// fill in the lines (except the last, which is always up to date)
+	void format(long fps, long averagePaint, long inputRate, long allocationRate, long elapsed) {
+		int n = 0;
+		n = put(lines[0], 0, "fps ");
+		lengths[0] = put(lines[0], n, fps);
+
+		n = put(lines[1], 0, "paint ");
+		n = putMillis(lines[1], n, lastPaint);
+		n = put(lines[1], n, "/");
+		n = putMillis(lines[1], n, averagePaint);
+		n = put(lines[1], n, "/");
+		n = putMillis(lines[1], n, maxPaint);
+		lengths[1] = put(lines[1], n, " ms");
+
+		n = put(lines[2], 0, "input ");
+		n = put(lines[2], n, inputRate);
+		lengths[2] = put(lines[2], n, "/s");
+
+		n = put(lines[3], 0, "alloc ");
+		n = put(lines[3], n, allocationRate/1024);
+		lengths[3] = put(lines[3], n, AllocationCounter.isSupported() ? " KB/s" : " ?");
+	}
+
+	// draw the figures in the bottom right corner of a width by height area
+	public void paint(Graphics g, int width, int height, int wherein, int message) {
+		if (!visible)
+			return;
+		int n = put(lines[4], 0, "point ");
+		n = put(lines[4], n, wherein);
+		n = put(lines[4], n, "  msg ");
+		lengths[4] = put(lines[4], n, message);
+
+		int x = width - WIDTH;
+		int y = height - LINES*LINE_HEIGHT - 4;
+		Color color = g.getColor();
+		g.setColor(Color.white);
+		g.fillRect(x, y, WIDTH, LINES*LINE_HEIGHT + 4);
+		g.setColor(Color.darkGray);
+		g.drawRect(x, y, WIDTH - 1, LINES*LINE_HEIGHT + 3);
+		for (int i = 0; i < LINES; i++)
+			g.drawChars(lines[i], 0, lengths[i], x + 4, y + (i + 1)*LINE_HEIGHT);
+		g.setColor(color);
+	}
+
+	// where the box is, in a width by height area
+	public Rectangle bounds(int width, int height, Rectangle r) {
+		r.setBounds(width - WIDTH, height - LINES*LINE_HEIGHT - 4, WIDTH, LINES*LINE_HEIGHT + 4);
+		return r;
+	}
+
+	// put s into line at n; return where it ends
+	static int put(char[] line, int n, String s) {
+		int length = Math.min(s.length(), line.length - n);
+		s.getChars(0, length, line, n);
+		return n + length;
+	}
+
+	// ... and the same for a number
+	static int put(char[] line, int n, long value) {
+		if (value < 0) {
+			if (n < line.length)
+				line[n++] = '-';
+			value = -value;
+		}
+		long power = 1;
+		while (value/power >= 10)
+			power *= 10;
+		for (; (power > 0) && (n < line.length); power /= 10)
+			line[n++] = (char)('0' + (value/power)%10);
+		return n;
+	}
+
+	// nanos as milliseconds, to a tenth
+	static int putMillis(char[] line, int n, long nanos) {
+		long tenths = (nanos + 50000)/100000;
+		n = put(line, n, tenths/10);
+		if (n + 1 < line.length) {
+			line[n++] = '.';
+			line[n++] = (char)('0' + tenths%10);
+		}
+		return n;
+	}
+}
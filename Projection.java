@@ -0,0 +1,196 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * The projection rules of the demo, without any of the display.
+ *  Each method takes the times of the events so far (measured from the
+ *  beginning of the first sound, which is always time 0) and returns the
+ *  message code that Rhythm.setMessages would show for the new event.
+ *  Nothing here allocates, so the same rules can be run over millions of
+ *  sequences as easily as over a single click.
+ */
+public class Projection {
+	public final static int unitLength = 400/3; // the limit of mensural determinacy
+	public final static int NONE = -1; // none of the rules applied; the message stays as it was
+	public final static int REJECTED = -2; // the events don't follow one another
+
+	// what the outcome of an event means for the projection it decides
+	public final static int OTHER = 0; // no projection was decided
+	public final static int PROJECTED = 1; // a duration began to project
+	public final static int REALIZED = 2; // a projection was realized
+	public final static int DENIED = 3; // a projection was denied
+	public final static int HIATUS = 4; // realized, but followed by a break
+	public final static int INDETERMINATE = 5; // too long to project at all
+
+	private Projection() {
+	}
+
+	// sorts a message code into one of the kinds above
+	public static int kind(int code) {
+		switch (code) {
+		case 8:
+			return PROJECTED;
+		case 19: case 20: case 22: case 24:
+			return REALIZED;
+		case 14: case 15: case 25:
+			return DENIED;
+		case 21: case 26:
+			return HIATUS;
+		case 5: case 9:
+			return INDETERMINATE;
+		}
+		return OTHER;
+	}
+
+	// the end of the first sound: is its duration determinate (4) or not (5)?
+	public static int firstEnd(long end, long limit) {
+		if ((end > 0) && (end <= limit))
+			return 4;
+		return 5;
+	}
+
+	/* the beginning of the second sound: is it close enough to the end of
+	 *  the first for a projection (8) or not (9)?
+	 */
+	public static int secondBegin(long end1, long begin2, long limit) {
+		if ((begin2 >= end1) && (begin2 < (end1 + limit)))
+			return 8;
+		if (begin2 >= (end1 + limit))
+			return 9;
+		return NONE;
+	}
+
+	/* the end of the second sound, measured against the projected duration
+	 *  2*b (the first interonset duration, reproduced)
+	 */
+	public static int secondEnd(long begin2, long end2, long limit) {
+		return secondEnd(begin2, end2, limit, 0);
+	}
+
+	/* the same, but an end within tolerance of 2*b counts as exactly 2*b.
+	 *  Times measured from a performance (rather than in pixels) hardly ever
+	 *  land exactly on it.
+	 */
+	public static int secondEnd(long begin2, long end2, long limit, long tolerance) {
+		long b = begin2;
+		long x = end2;
+		if (x < (2*b - tolerance))
+			return 13;
+		else if ((x > 2*b + tolerance) && (x < b + limit))
+			return 14;
+		else if (x > b + limit)
+			return 15;
+		else if (Math.abs(x - 2*b) <= tolerance)
+			return 20;
+		return NONE;
+	}
+
+	/* the beginning of the third sound, which decides the fate of the
+	 *  projection begun by the second.  The bands are the ones the
+	 *  commentary describes: an accel. down to 1.75*where, a rall. up to
+	 *  2.5*where, and hiatus once we're past where + limit.  The order of
+	 *  the tests matters, since the bands overlap for long first durations.
+	 */
+	public static int thirdBegin(long begin2, long end2, long begin3, long limit) {
+		return thirdBegin(begin2, end2, begin3, limit, 0);
+	}
+
+	// the same, but a beginning within tolerance of 2*where is right on time
+	public static int thirdBegin(long begin2, long end2, long begin3, long limit,
+								 long tolerance) {
+		long where = begin2;
+		long x = begin3;
+		// 1.75*where and 2.5*where, kept exact in integer arithmetic
+		if ((x < 2*where - tolerance) && (4*x >= 7*where))
+			return 19;
+		else if ((4*x < 7*where) && (x >= end2))
+			return 22;
+		else if (Math.abs(x - 2*where) <= tolerance)
+			return 20;
+		else if (x > where + limit)
+			return 21;
+		else if ((2*x < 5*where) && (x > 2*where + tolerance))
+			return 24;
+		else if ((2*x > 5*where) && (x < where + limit))
+			return 25;
+		else if (x > where + limit)
+			return 26; // never reached: the hiatus test above catches these
+		return NONE;
+	}
+
+	/* The end the demo supplies for the third sound, which the user never
+	 *  performs: just short of the projected end for the early
+	 *  beginnings, a little after the beginning otherwise.
+	 */
+	public static long thirdEnd(int code, long begin2, long begin3) {
+		if ((code == 19) || (code == 22))
+			return 2*begin2 - 5;
+		return begin3 + 20;
+	}
+
+	/* Runs a whole three-sound performance through the rules, the way a
+	 *  user clicking through the demo would, and returns the message code
+	 *  left showing when the demo is done.  The sounds are read from
+	 *  onsets[from..from+2] and offsets[from..from+1]; the third offset is
+	 *  supplied by the demo, so it is never read.  Times are shifted so the
+	 *  first sound begins at 0.
+	 */
+	public static int classify(long[] onsets, long[] offsets, int from, long limit) {
+		long origin = onsets[from];
+		long end1 = offsets[from] - origin;
+		long begin2 = onsets[from + 1] - origin;
+		long end2 = offsets[from + 1] - origin;
+		long begin3 = onsets[from + 2] - origin;
+
+		// each event has to come strictly after the last one
+		if (end1 <= 0)
+			return REJECTED;
+		int code = firstEnd(end1, limit);
+		if (code == 5)
+			return code;
+
+		if (begin2 <= end1)
+			return REJECTED;
+		code = secondBegin(end1, begin2, limit);
+		if (code == 9)
+			return code;
+
+		if (end2 <= begin2)
+			return REJECTED;
+		int ended = secondEnd(begin2, end2, limit);
+		if ((ended == 14) || (ended == 15))
+			return ended;
+		if (ended != NONE)
+			code = ended;
+
+		if (begin3 <= end2)
+			return REJECTED;
+		int begun = thirdBegin(begin2, end2, begin3, limit);
+		if (begun != NONE)
+			code = begun;
+		return code;
+	}
+
+	/* The batch entry point: count performances of three sounds each, laid
+	 *  out one after another in onsets and offsets, so that the i-th one
+	 *  begins at index 3*i.  The codes go into results[0..count-1].
+	 */
+	public static void classifyAll(long[] onsets, long[] offsets, int count,
+								   long limit, int[] results) {
+		for (int i = 0; i < count; i++)
+			results[i] = classify(onsets, offsets, 3*i, limit);
+	}
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * Projection at more than one level.  The demo (and ProjectionStream)
+ *  only ever has one duration projecting the next; but where a projection
+ *  is realized, the two durations together make a larger one, which can
+ *  project in its turn.  So each level here keeps those beginnings of the
+ *  level below that begin a realized pair of durations, and the rules
+ *  are run over them again, until the durations grow past the limit and
+ *  there is nothing left to realize.  Each level has at most half the
+ *  beginnings of the one below it, so all of them together take no more
+ *  than twice the work of the first.
+ *
+ *  A level is run in chunks on a fork/join pool.  The stream's state is a
+ *  few numbers that the last couple of events decide, so each chunk is
+ *  run as if the performance began there, and then, in order, each is run
+ *  again from where the chunk before really left off until its state
+ *  agrees with the guess, which is hardly ever more than a few events.
+ *
+ *  Usage: java ProjectionHierarchy [-threads n] [-limit seconds] file [piece]
+ */
+public class ProjectionHierarchy implements SoundListener {
+	final static int GRAIN = 1 << 15; // the events in a chunk
+
+	// the beginnings at one level, and what the rules made of them
+	public static class Level {
+		long[] onsets, offsets; // the offset is the end of the sound that begins there
+		int count = 0;
+		byte[] onsetCodes; // the outcome at each beginning, or NONE
+		byte[] offsetCodes; // ... and at each end
+		byte[] stages; // the stream's stage after each event
+		long[] origins; // ... and its origin
+		int[] below; // where each beginning is in the level below
+
+		Level(int capacity) {
+			onsets = new long[Math.max(1, capacity)];
+			offsets = new long[Math.max(1, capacity)];
+		}
+
+		void add(long onset, long offset) {
+			if (count == onsets.length) {
+				onsets = Arrays.copyOf(onsets, 2*count);
+				offsets = Arrays.copyOf(offsets, 2*count);
+			}
+			onsets[count] = onset;
+			offsets[count] = offset;
+			count++;
+		}
+
+		public int getCount() {
+			return count;
+		}
+	}
+
+	/* Plays the events of a level into a stream, writing down what comes
+	 *  back.  The stream counts events from where it started, at base.
+	 */
+	class Player implements ProjectionStream.Listener {
+		Level level;
+		ProjectionStream stream;
+		int base;
+		boolean atOnset;
+
+		Player(Level level, int base) {
+			this.level = level;
+			this.base = base;
+			stream = new ProjectionStream(limit, this);
+		}
+
+		void play(int i) {
+			level.onsetCodes[i] = level.offsetCodes[i] = Projection.NONE;
+			atOnset = true;
+			stream.onset(level.onsets[i]);
+			atOnset = false;
+			stream.offset(level.offsets[i]);
+			level.stages[i] = (byte)stream.stage;
+			level.origins[i] = stream.origin;
+		}
+
+		public void outcome(long event, int code, long begin, long end) {
+			if (code < 0)
+				return;
+			int i = base + (int)event;
+			if (atOnset)
+				level.onsetCodes[i] = (byte)code;
+			else
+				level.offsetCodes[i] = (byte)code;
+		}
+
+		// is the stream where the run that left stages[i] and origins[i] was?
+		boolean agrees(int i, byte stage, long origin) {
+			return (stream.stage == stage)
+				&& ((stage == ProjectionStream.START) || (stream.origin == origin));
+		}
+	}
+
+	// runs chunks [from, to) of a level, each from a standing start
+	@SuppressWarnings("serial")
+	class Guess extends RecursiveAction {
+		final Level level;
+		final Player[] players;
+		final int from, to;
+
+		Guess(Level level, Player[] players, int from, int to) {
+			this.level = level;
+			this.players = players;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from == 1) {
+				Player player = new Player(level, from*GRAIN);
+				int end = Math.min(level.count, (from + 1)*GRAIN);
+				for (int i = from*GRAIN; i < end; i++)
+					player.play(i);
+				players[from] = player;
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new Guess(level, players, from, middle), new Guess(level, players, middle, to));
+		}
+	}
+
+	long limit;
+	List<Level> levels = new ArrayList<Level>();
+	Level first = new Level(1024);
+	long lastOffset = Long.MIN_VALUE;
+	long fixed = 0; // how many events the chunks had to run again
+
+	public ProjectionHierarchy(long limit) {
+		this.limit = limit;
+	}
+
+	/* The performance comes in here.  Sounds that overlap the one before
+	 *  (or end before they begin) are left out, so every event counts.
+	 */
+	public void sound(long onset, long offset) {
+		if ((onset <= lastOffset) || (offset <= onset))
+			return;
+		first.add(onset, offset);
+		lastOffset = offset;
+	}
+
+	// run the rules at every level, on pool
+	public void build(ForkJoinPool pool) {
+		levels.clear();
+		Level level = first;
+		while (level.count >= 3) {
+			analyze(level, pool);
+			levels.add(level);
+			level = up(level);
+		}
+	}
+
+	void analyze(Level level, ForkJoinPool pool) {
+		int n = level.count;
+		level.onsetCodes = new byte[n];
+		level.offsetCodes = new byte[n];
+		level.stages = new byte[n];
+		level.origins = new long[n];
+		int chunks = (n + GRAIN - 1)/GRAIN;
+		Player[] players = new Player[chunks];
+		pool.invoke(new Guess(level, players, 0, chunks));
+
+		// carry the real state into each chunk until it agrees with the guess
+		for (int c = 1; c < chunks; c++) {
+			Player real = players[c - 1];
+			int end = Math.min(n, (c + 1)*GRAIN);
+			boolean agreed = false;
+			for (int i = c*GRAIN; (i < end) && !agreed; i++) {
+				byte stage = level.stages[i];
+				long origin = level.origins[i];
+				real.play(i);
+				fixed++;
+				agreed = real.agrees(i, stage, origin);
+			}
+			// from where they agree on, the guess is right, and so is where it ends
+			if (!agreed)
+				players[c] = real;
+		}
+	}
+
+	/* The level above: where a projection is realized at beginning i, the
+	 *  durations from i - 2 to i - 1 and from i - 1 to i make one, which
+	 *  begins at i - 2.  Pairs are taken from the left, without overlapping.
+	 */
+	Level up(Level level) {
+		Level above = new Level(level.count/2 + 1);
+		int[] below = new int[level.count/2 + 1];
+		int i = 0;
+		while (i + 2 < level.count) {
+			if (Projection.kind(level.onsetCodes[i + 2]) == Projection.REALIZED) {
+				below[above.count] = i;
+				above.add(level.onsets[i], level.offsets[i]);
+				i += 2;
+			} else
+				i++;
+		}
+		above.below = below;
+		return above;
+	}
+
+	public int getLevelCount() {
+		return levels.size();
+	}
+
+	public Level getLevel(int level) {
+		return levels.get(level);
+	}
+
+	public long getLimit() {
+		return limit;
+	}
+
+	// the counts of each kind of outcome at each level
+	public void print(PrintStream out) {
+		out.println("level\tevents\tprojected\trealized\tdenied\thiatus\tindeterminate");
+		for (int l = 0; l < levels.size(); l++) {
+			Level level = levels.get(l);
+			long[] kinds = new long[6];
+			for (int i = 0; i < level.count; i++) {
+				if (level.onsetCodes[i] >= 0)
+					kinds[Projection.kind(level.onsetCodes[i])]++;
+				if (level.offsetCodes[i] >= 0)
+					kinds[Projection.kind(level.offsetCodes[i])]++;
+			}
+			out.println(l + "\t" + level.count + "\t" + kinds[Projection.PROJECTED]
+						+ "\t" + kinds[Projection.REALIZED] + "\t" + kinds[Projection.DENIED]
+						+ "\t" + kinds[Projection.HIATUS] + "\t" + kinds[Projection.INDETERMINATE]);
+		}
+	}
+
+	// read a performance from a MIDI file, an onset file or a corpus
+	public static ProjectionHierarchy load(File file, int piece, double limitSeconds) throws Exception {
+		ProjectionHierarchy hierarchy = new ProjectionHierarchy(Projection.unitLength);
+		String name = file.getName().toLowerCase();
+		if (name.endsWith(".onc")) {
+			OnsetCorpus corpus = OnsetCorpus.open(file);
+			try {
+				corpus.read(piece, hierarchy);
+			} finally {
+				corpus.close();
+			}
+		} else if (name.endsWith(".mid") || name.endsWith(".midi"))
+			new MidiSource(file, limitSeconds).read(hierarchy);
+		else
+			OnsetReader.read(file, hierarchy);
+		return hierarchy;
+	}
+
+	public static void main(String argv[]) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		double limit = MidiSource.defaultLimitSeconds;
+		String file = null;
+		int piece = 0;
+		for (int i = 0; i < argv.length; i++) {
+			if (argv[i].equals("-threads") && (i + 1 < argv.length))
+				threads = Integer.parseInt(argv[++i]);
+			else if (argv[i].equals("-limit") && (i + 1 < argv.length))
+				limit = Double.parseDouble(argv[++i]);
+			else if (file == null)
+				file = argv[i];
+			else
+				piece = Integer.parseInt(argv[i]);
+		}
+		if (file == null) {
+			System.err.println("Usage: java ProjectionHierarchy [-threads n] [-limit seconds] file [piece]");
+			System.exit(1);
+		}
+
+		ProjectionHierarchy hierarchy = load(new File(file), piece, limit);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long start = System.nanoTime();
+		hierarchy.build(pool);
+		double seconds = (System.nanoTime() - start)/1e9;
+		pool.shutdown();
+		hierarchy.print(System.out);
+		System.err.println(String.format("%d levels in %.3f s on %d threads (%d events run again)",
+										 hierarchy.getLevelCount(), seconds, threads, hierarchy.fixed));
+	}
+}
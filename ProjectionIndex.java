@@ -0,0 +1,707 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*
+ * An index of the outcomes of a corpus, so that questions like "where
+ *  does an accel. come just before a hiatus?" or "which realized
+ *  projections last within 5% of the limit?" can be answered without
+ *  running the rules (or even reading the outcomes) again.  Each outcome
+ *  gets a number, in the order they came out, and the index keeps, for
+ *  each of these keys, the numbers of the outcomes that have it:
+ *
+ *    codes   a run of one, two or three codes, one after another in the
+ *            same piece (listed under the first outcome of the run)
+ *    length  the duration the outcome is about, in hundredths of the limit
+ *    ratio   for the beginning of a third sound, where it came over where
+ *            (the demo's x/where: 1.75 and 2.5 bound the accel. and the
+ *            rall.), in hundredths
+ *
+ *  A query names some keys (or ranges of them) and gets the outcomes that
+ *  have all of them, by stepping through the lists together and skipping
+ *  ahead in each to the next number the others could agree on.  The
+ *  numbers are stored as the differences between them, a byte or two
+ *  each, in blocks of 128; a table of where each block starts and what
+ *  its first number is lets us skip blocks without decoding them.  The
+ *  file is read through memory mapping, like an OnsetCorpus; its layout
+ *  (little-endian) is
+ *
+ *    header    the magic number "PIDX", the version, the number of pieces
+ *              and of keys, the number of outcomes, the limit, and the
+ *              offsets of the keys, the lists and the names
+ *    outcomes  for each outcome: its event, begin, end, piece and code
+ *    keys      for each key, in order: the key, how many outcomes have
+ *              it, and where its list is
+ *    lists     for each key: the table of its blocks, then the blocks
+ *    names     the pieces' names, each a length and then UTF-8
+ *
+ *  Usage: java ProjectionIndex build out.pix [-limit seconds] dir-or-file...
+ *         java ProjectionIndex query index.pix [-max n] term...
+ *  where a term is one of
+ *         codes c [c [c]]   kind projected|realized|denied|hiatus|indeterminate
+ *         length low high   ratio low high
+ */
+public class ProjectionIndex implements Closeable {
+	final static int MAGIC = 0x58444950; // "PIDX", read little-endian
+	final static int VERSION = 1;
+	final static int HEADER = 56; // bytes
+	final static int RECORD = 32; // bytes per outcome
+	final static int ENTRY = 16; // bytes per key
+	final static int SKIP = 12; // bytes per block in a list's table
+	final static int BLOCK = 128; // numbers per block
+	final static int CHUNK_SHIFT = 25; // each mapping holds 1 << 25 outcomes (1GB)
+
+	// the kinds of key, in the top byte
+	final static int CODES = 1; // 1, 2 or 3 of them, so 1 to 3
+	final static int LENGTH = 4;
+	final static int RATIO = 5;
+	final static int MAX_BUCKET = 1000; // anything longer is counted as this
+	final static String[] kindNames = { "other", "projected", "realized", "denied",
+										"hiatus", "indeterminate" };
+
+	static int codesKey(int[] codes, int n) {
+		int key = (CODES + n - 1) << 24;
+		for (int i = 0; i < n; i++)
+			key |= codes[i] << (8*(2 - i));
+		return key;
+	}
+
+	// how many hundredths of whole part is, to the nearest one
+	static int bucket(long part, long whole) {
+		if (whole <= 0)
+			return MAX_BUCKET;
+		return (int)Math.min(MAX_BUCKET, (200*part + whole)/(2*whole));
+	}
+
+	FileChannel channel;
+	ByteBuffer[] outcomes; // one mapping per chunk of them
+	ByteBuffer keys;
+	ByteBuffer lists;
+	String[] names;
+	int keyCount;
+	long outcomeCount;
+	long limit;
+
+	ProjectionIndex(FileChannel channel) throws IOException {
+		this.channel = channel;
+		ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		if ((header.getInt(0) != MAGIC) || (header.getInt(4) != VERSION))
+			throw new IOException("Not a projection index");
+		int pieceCount = header.getInt(8);
+		keyCount = header.getInt(12);
+		outcomeCount = header.getLong(16);
+		limit = header.getLong(24);
+		long keysAt = header.getLong(32);
+		long listsAt = header.getLong(40);
+		long namesAt = header.getLong(48);
+
+		int chunks = (int)((outcomeCount + (1L << CHUNK_SHIFT) - 1) >>> CHUNK_SHIFT);
+		outcomes = new ByteBuffer[chunks];
+		for (int i = 0; i < chunks; i++) {
+			long first = ((long)i) << CHUNK_SHIFT;
+			long count = Math.min(1L << CHUNK_SHIFT, outcomeCount - first);
+			outcomes[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER + RECORD*first, RECORD*count)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		keys = channel.map(FileChannel.MapMode.READ_ONLY, keysAt, (long)ENTRY*keyCount)
+			.order(ByteOrder.LITTLE_ENDIAN);
+		lists = channel.map(FileChannel.MapMode.READ_ONLY, listsAt, namesAt - listsAt)
+			.order(ByteOrder.LITTLE_ENDIAN);
+
+		// there are few enough pieces to read their names now
+		ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, namesAt, channel.size() - namesAt)
+			.order(ByteOrder.LITTLE_ENDIAN);
+		names = new String[pieceCount];
+		for (int i = 0; i < pieceCount; i++) {
+			byte[] bytes = new byte[in.getInt()];
+			in.get(bytes);
+			names[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+
+	public static ProjectionIndex open(File file) throws IOException {
+		FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+		try {
+			return new ProjectionIndex(channel);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	public long getOutcomeCount() {
+		return outcomeCount;
+	}
+
+	// the i-th outcome
+	ByteBuffer record(long i) {
+		return outcomes[(int)(i >>> CHUNK_SHIFT)];
+	}
+
+	int at(long i) {
+		return (int)(RECORD*(i & ((1L << CHUNK_SHIFT) - 1)));
+	}
+
+	public long getEvent(long i) {
+		return record(i).getLong(at(i));
+	}
+
+	public long getBegin(long i) {
+		return record(i).getLong(at(i) + 8);
+	}
+
+	public long getEnd(long i) {
+		return record(i).getLong(at(i) + 16);
+	}
+
+	public String getPiece(long i) {
+		return names[record(i).getInt(at(i) + 24)];
+	}
+
+	public int getCode(long i) {
+		return record(i).getInt(at(i) + 28);
+	}
+
+	/* The outcomes a query matches, in order.  advance moves to the first
+	 *  one at or after target (and says whether there was one); value is
+	 *  where it is.
+	 */
+	public static abstract class Matches {
+		long value = -1;
+
+		public abstract boolean advance(long target);
+
+		public long getValue() {
+			return value;
+		}
+	}
+
+	// the outcomes that have a key, read from its list
+	class Cursor extends Matches {
+		final int table, data; // where the list's table and blocks are
+		final int count, blocks;
+		int block = -1; // which block we're in
+		int left; // how many numbers are left in it after value
+		int position; // where the next of them is
+
+		Cursor(int table, int count) {
+			this.table = table;
+			this.count = count;
+			blocks = (count + BLOCK - 1)/BLOCK;
+			data = table + SKIP*blocks;
+		}
+
+		long first(int block) {
+			return lists.getLong(table + SKIP*block);
+		}
+
+		void enter(int block) {
+			this.block = block;
+			value = first(block);
+			position = data + lists.getInt(table + SKIP*block + 8);
+			left = Math.min(BLOCK, count - BLOCK*block) - 1;
+		}
+
+		public boolean advance(long target) {
+			if (value == Long.MAX_VALUE)
+				return false;
+			if ((block >= 0) && (value >= target))
+				return true;
+			if ((block < 0) || ((block + 1 < blocks) && (first(block + 1) <= target))) {
+				// the last block beginning at or before target
+				int low = Math.max(block, 0), high = blocks - 1;
+				while (low < high) {
+					int middle = (low + high + 1) >>> 1;
+					if (first(middle) <= target)
+						low = middle;
+					else
+						high = middle - 1;
+				}
+				enter(low);
+			}
+			while (value < target) {
+				if (left == 0) {
+					if (block + 1 >= blocks) {
+						value = Long.MAX_VALUE;
+						return false;
+					}
+					enter(block + 1);
+					continue;
+				}
+				// a difference, seven bits to a byte, low bits first
+				long delta = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = lists.get(position++);
+					delta |= ((long)(b & 0x7f)) << shift;
+					shift += 7;
+				} while (b < 0);
+				value += delta;
+				left--;
+			}
+			return true;
+		}
+	}
+
+	// the outcomes any of parts has, kept in a heap by where each part is
+	static class Union extends Matches {
+		Matches[] parts;
+		int size = -1; // how many parts have more, once we've started
+
+		Union(List<Matches> parts) {
+			this.parts = parts.toArray(new Matches[parts.size()]);
+		}
+
+		public boolean advance(long target) {
+			if (size < 0) {
+				size = 0;
+				for (int i = 0; i < parts.length; i++)
+					if (parts[i].advance(target))
+						parts[size++] = parts[i];
+				for (int i = size/2 - 1; i >= 0; i--)
+					down(i);
+			}
+			while ((size > 0) && (parts[0].value < target)) {
+				if (!parts[0].advance(target))
+					parts[0] = parts[--size];
+				down(0);
+			}
+			value = (size > 0) ? parts[0].value : Long.MAX_VALUE;
+			return size > 0;
+		}
+
+		void down(int i) {
+			Matches m = parts[i];
+			while (2*i + 1 < size) {
+				int child = 2*i + 1;
+				if ((child + 1 < size) && (parts[child + 1].value < parts[child].value))
+					child++;
+				if (parts[child].value >= m.value)
+					break;
+				parts[i] = parts[child];
+				i = child;
+			}
+			parts[i] = m;
+		}
+	}
+
+	// the outcomes all of parts have
+	static class Intersection extends Matches {
+		Matches[] parts;
+
+		Intersection(List<Matches> parts) {
+			this.parts = parts.toArray(new Matches[parts.size()]);
+		}
+
+		public boolean advance(long target) {
+			int agreed = 0; // how many parts in a row are at target
+			for (int i = 0; agreed < parts.length; i = (i + 1)%parts.length) {
+				if (!parts[i].advance(target)) {
+					value = Long.MAX_VALUE;
+					return false;
+				}
+				if (parts[i].value > target) {
+					target = parts[i].value;
+					agreed = 1;
+				} else
+					agreed++;
+			}
+			value = target;
+			return true;
+		}
+	}
+
+	// the list of a key, or null if no outcome has it
+	Matches key(int key) {
+		int low = 0, high = keyCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int k = keys.getInt(ENTRY*middle);
+			if (k < key)
+				low = middle + 1;
+			else if (k > key)
+				high = middle - 1;
+			else
+				return new Cursor((int)keys.getLong(ENTRY*middle + 8), keys.getInt(ENTRY*middle + 4));
+		}
+		return null;
+	}
+
+	// the lists of keys low to high (the empty ones left out)
+	Matches range(int low, int high) {
+		List<Matches> parts = new ArrayList<Matches>();
+		for (int key = low; key <= high; key++) {
+			Matches m = key(key);
+			if (m != null)
+				parts.add(m);
+		}
+		return (parts.size() == 1) ? parts.get(0) : new Union(parts);
+	}
+
+	/* The outcomes matching every term of a query.  A term is a word and
+	 *  the numbers after it:
+	 *    codes c [c [c]]    a run of these codes, beginning here
+	 *    kind name          any code of this kind (see Projection.kind)
+	 *    length low high    lasting low to high hundredths of the limit
+	 *    ratio low high     a third beginning at low to high hundredths of where
+	 */
+	public Matches query(String[] terms) {
+		List<Matches> parts = new ArrayList<Matches>();
+		int i = 0;
+		while (i < terms.length) {
+			String word = terms[i++];
+			int n = 0;
+			int[] numbers = new int[3];
+			while ((i < terms.length) && (n < 3) && Character.isDigit(terms[i].charAt(0)))
+				numbers[n++] = Integer.parseInt(terms[i++]);
+			if (word.equals("codes") && (n >= 1)) {
+				for (int k = 0; k < n; k++)
+					if (numbers[k] >= OutcomeCounts.CODES)
+						throw new IllegalArgumentException("No such code: " + numbers[k]);
+				Matches m = key(codesKey(numbers, n));
+				parts.add((m != null) ? m : range(1, 0));
+			} else if (word.equals("kind") && (i < terms.length)) {
+				int kind = Arrays.asList(kindNames).indexOf(terms[i++]);
+				if (kind < 0)
+					throw new IllegalArgumentException("No such kind: " + terms[i - 1]);
+				List<Matches> codes = new ArrayList<Matches>();
+				for (int c = 0; c < OutcomeCounts.CODES; c++)
+					if (Projection.kind(c) == kind) {
+						Matches m = key(codesKey(new int[] { c }, 1));
+						if (m != null)
+							codes.add(m);
+					}
+				parts.add(new Union(codes));
+			} else if ((word.equals("length") || word.equals("ratio")) && (n == 2)) {
+				int type = word.equals("length") ? LENGTH : RATIO;
+				parts.add(range((type << 24) | Math.min(numbers[0], MAX_BUCKET),
+								(type << 24) | Math.min(numbers[1], MAX_BUCKET)));
+			} else
+				throw new IllegalArgumentException("Can't make sense of the term " + word);
+		}
+		if (parts.isEmpty())
+			throw new IllegalArgumentException("An empty query");
+		return (parts.size() == 1) ? parts.get(0) : new Intersection(parts);
+	}
+
+	/* Writes an index as the outcomes come: begin a piece, hand it the
+	 *  piece's sounds (it's a SoundListener), and begin the next; close
+	 *  finishes the file, and abort gives it up.  The lists are kept in
+	 *  memory, already packed.
+	 */
+	public static class Builder implements SoundListener, ProjectionStream.Listener, Closeable {
+		// a list being written: the table of its blocks, and the blocks
+		static class Postings {
+			long[] firsts = new long[1];
+			int[] starts = new int[1];
+			byte[] data = new byte[16];
+			int size = 0; // bytes of data
+			int count = 0;
+			long last;
+
+			void add(long value) {
+				if (count%BLOCK == 0) {
+					int block = count/BLOCK;
+					if (block == firsts.length) {
+						firsts = Arrays.copyOf(firsts, 2*block);
+						starts = Arrays.copyOf(starts, 2*block);
+					}
+					firsts[block] = value;
+					starts[block] = size;
+				} else {
+					if (size + 10 > data.length)
+						data = Arrays.copyOf(data, 2*data.length);
+					long delta = value - last;
+					while (delta >= 0x80) {
+						data[size++] = (byte)(delta | 0x80);
+						delta >>>= 7;
+					}
+					data[size++] = (byte)delta;
+				}
+				last = value;
+				count++;
+			}
+		}
+
+		File file;
+		FileChannel channel;
+		ByteBuffer buffer = ByteBuffer.allocate(64*1024).order(ByteOrder.LITTLE_ENDIAN);
+		long position = HEADER;
+		Map<Integer, Postings> postings = new HashMap<Integer, Postings>();
+		List<String> pieces = new ArrayList<String>();
+		ProjectionStream stream;
+		long limit;
+		long outcomes = 0;
+
+		// the piece so far
+		int[] codes = new int[3]; // the latest codes, the latest last
+		long[] numbers = new long[3]; // ... and their outcomes
+		int recent = 0; // how many of them there are
+		long lastOnset, beforeLast; // the latest beginnings
+		boolean atOnset; // is the stream deciding a beginning?
+
+		public Builder(File file, long limit) throws IOException {
+			this.file = file;
+			this.limit = limit;
+			stream = new ProjectionStream(limit, this);
+			channel = new RandomAccessFile(file, "rw").getChannel();
+			channel.truncate(0);
+		}
+
+		public void beginPiece(String name) {
+			pieces.add(name);
+			stream.reset();
+			recent = 0;
+			lastOnset = beforeLast = Long.MIN_VALUE;
+		}
+
+		public void sound(long onset, long offset) {
+			if (pieces.isEmpty())
+				throw new IllegalStateException("A sound came before any piece began");
+			atOnset = true;
+			boolean well = stream.onset(onset);
+			atOnset = false;
+			if (!well)
+				return;
+			beforeLast = lastOnset;
+			lastOnset = onset;
+			stream.offset(offset);
+		}
+
+		void post(int key, long number) {
+			Postings p = postings.get(key);
+			if (p == null) {
+				p = new Postings();
+				postings.put(key, p);
+			}
+			p.add(number);
+		}
+
+		public void outcome(long event, int code, long begin, long end) {
+			if (code < 0)
+				return;
+			long number = outcomes++;
+			try {
+				if (buffer.remaining() < RECORD)
+					flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			buffer.putLong(event).putLong(begin).putLong(end);
+			buffer.putInt(pieces.size() - 1).putInt(code);
+
+			// the runs of codes that end here, each listed under its first outcome
+			if (recent == 3) {
+				codes[0] = codes[1];
+				codes[1] = codes[2];
+				numbers[0] = numbers[1];
+				numbers[1] = numbers[2];
+				recent = 2;
+			}
+			codes[recent] = code;
+			numbers[recent] = number;
+			recent++;
+			for (int n = 1; n <= recent; n++) {
+				int first = recent - n;
+				int key = (CODES + n - 1) << 24;
+				for (int k = 0; k < n; k++)
+					key |= codes[first + k] << (8*(2 - k));
+				post(key, numbers[first]);
+			}
+
+			post((LENGTH << 24) | bucket(end - begin, limit), number);
+			/* a third beginning: begin is the second's, and the one before
+			 *  it (beforeLast, since this one isn't counted yet) the first's
+			 */
+			if (atOnset && (code >= 19) && (lastOnset == begin) && (beforeLast != Long.MIN_VALUE)) {
+				long where = begin - beforeLast;
+				post((RATIO << 24) | bucket(end - beforeLast, where), number);
+			}
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				position += channel.write(buffer, position);
+			buffer.clear();
+		}
+
+		void putLong(long value) throws IOException {
+			if (buffer.remaining() < 8)
+				flush();
+			buffer.putLong(value);
+		}
+
+		void putInt(int value) throws IOException {
+			if (buffer.remaining() < 4)
+				flush();
+			buffer.putInt(value);
+		}
+
+		public void close() throws IOException {
+			Integer[] sorted = postings.keySet().toArray(new Integer[postings.size()]);
+			Arrays.sort(sorted);
+
+			// the keys, with where each list will go
+			flush();
+			long keysAt = position;
+			long at = 0;
+			for (int i = 0; i < sorted.length; i++) {
+				Postings p = postings.get(sorted[i]);
+				putInt(sorted[i]);
+				putInt(p.count);
+				putLong(at);
+				at += SKIP*((p.count + BLOCK - 1)/BLOCK) + p.size;
+			}
+			if (at > Integer.MAX_VALUE)
+				throw new IOException("Too many outcomes for one index");
+
+			flush();
+			long listsAt = position;
+			for (int i = 0; i < sorted.length; i++) {
+				Postings p = postings.get(sorted[i]);
+				for (int block = 0; block < (p.count + BLOCK - 1)/BLOCK; block++) {
+					putLong(p.firsts[block]);
+					putInt(p.starts[block]);
+				}
+				flush();
+				position += channel.write(ByteBuffer.wrap(p.data, 0, p.size), position);
+			}
+
+			long namesAt = position;
+			for (int i = 0; i < pieces.size(); i++) {
+				byte[] bytes = pieces.get(i).getBytes(StandardCharsets.UTF_8);
+				putInt(bytes.length);
+				flush();
+				position += channel.write(ByteBuffer.wrap(bytes), position);
+			}
+			flush();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(pieces.size()).putInt(sorted.length);
+			header.putLong(outcomes).putLong(limit);
+			header.putLong(keysAt).putLong(listsAt).putLong(namesAt);
+			header.flip();
+			channel.write(header, 0);
+			channel.close();
+		}
+
+		// gives up on the index: no header is written, and the file goes
+		public void abort() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// it's going anyway
+			}
+			file.delete();
+		}
+	}
+
+	// index every performance under roots, one piece per file (or per piece of a corpus)
+	static void build(File out, String[] roots, double limitSeconds) throws Exception {
+		File[] files = CorpusAnalyzer.find(roots);
+		Builder writer = new Builder(out, Projection.unitLength);
+		int failures = 0;
+		boolean done = false;
+		try {
+			for (int i = 0; i < files.length; i++) {
+				String name = files[i].getName().toLowerCase();
+				try {
+					if (name.endsWith(".onc")) {
+						OnsetCorpus corpus = OnsetCorpus.open(files[i]);
+						try {
+							for (int piece = 0; piece < corpus.getPieceCount(); piece++) {
+								writer.beginPiece(corpus.getName(piece));
+								corpus.read(piece, writer);
+							}
+						} finally {
+							corpus.close();
+						}
+					} else {
+						writer.beginPiece(files[i].getPath());
+						if (name.endsWith(".mid") || name.endsWith(".midi"))
+							new MidiSource(files[i], limitSeconds).read(writer);
+						else
+							OnsetReader.read(files[i], writer);
+					}
+				} catch (UncheckedIOException e) {
+					throw e.getCause(); // writing the index failed, not reading the file
+				} catch (Exception e) {
+					// one bad file shouldn't stop the rest; its outcomes so far stay
+					failures++;
+					System.err.println(files[i] + ": " + e.getMessage());
+				}
+			}
+			writer.close();
+			done = true;
+		} finally {
+			// only a whole index gets a header; half of one would read as whole
+			if (!done)
+				writer.abort();
+		}
+		System.err.println("indexed " + writer.outcomes + " outcomes of " + writer.pieces.size()
+						   + " pieces under " + writer.postings.size() + " keys (" + failures
+						   + " files failed; what each gave before failing is kept)");
+	}
+
+	public static void main(String argv[]) throws Exception {
+		if ((argv.length >= 3) && argv[0].equals("build")) {
+			double limit = MidiSource.defaultLimitSeconds;
+			int from = 2;
+			if (argv[2].equals("-limit") && (argv.length >= 5)) {
+				limit = Double.parseDouble(argv[3]);
+				from = 4;
+			}
+			build(new File(argv[1]), Arrays.copyOfRange(argv, from, argv.length), limit);
+		} else if ((argv.length >= 3) && argv[0].equals("query")) {
+			int max = 20, from = 2;
+			if (argv[2].equals("-max") && (argv.length >= 5)) {
+				max = Integer.parseInt(argv[3]);
+				from = 4;
+			}
+			ProjectionIndex index = open(new File(argv[1]));
+			long start = System.nanoTime();
+			Matches matches = index.query(Arrays.copyOfRange(argv, from, argv.length));
+			long count = 0;
+			for (boolean more = matches.advance(0); more; more = matches.advance(matches.value + 1)) {
+				if (count++ < max) {
+					long i = matches.value;
+					System.out.println(index.getPiece(i) + "\t" + index.getEvent(i) + "\t"
+									   + index.getCode(i) + "\t" + index.getBegin(i) + "\t" + index.getEnd(i));
+				}
+			}
+			System.err.println(String.format("%d of %d outcomes matched in %.3f ms", count,
+											 index.getOutcomeCount(), (System.nanoTime() - start)/1e6));
+			index.close();
+		} else {
+			System.err.println("Usage: java ProjectionIndex build out.pix [-limit seconds] dir-or-file...");
+			System.err.println("       java ProjectionIndex query index.pix [-max n] term...");
+			System.err.println("  codes c [c [c]] | kind name | length low high | ratio low high");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Runs the projection rules over a performance of any length, one
+ *  beginning or end of a sound at a time.  The demo stops after three
+ *  sounds; here, once the third sound has begun, its interonset duration
+ *  takes over as the projecting duration and the second and third sounds
+ *  play the roles of the first and second.  A hiatus, or a sound too long
+ *  to project, starts things over from the next beginning.
+ *
+ *  Only the projection that's still live (the one whose projective
+ *  potential hasn't passed the limit) needs to be kept, so the stream
+ *  holds a handful of longs however long the performance goes on, and
+ *  each call does a constant amount of work.
+ */
+public class ProjectionStream implements SoundListener {
+	// receives the outcome of every event the rules decide something about
+	public interface Listener {
+		/* event counts the beginnings seen so far (the first is 0); begin and
+		 *  end are the duration the outcome is about
+		 */
+		void outcome(long event, int code, long begin, long end);
+	}
+
+	// where we are in the (repeating) three-sound pattern
+	final static int START = 0; // waiting for the first sound to begin
+	final static int FIRST = 1; // the first sound is sounding
+	final static int AFTER_FIRST = 2; // waiting for the second sound to begin
+	final static int SECOND = 3; // the second sound is sounding
+	final static int AFTER_SECOND = 4; // waiting for the third sound to begin
+
+	Listener listener;
+	long limit; // the limit of mensural determinacy, in whatever units the times are in
+	long tolerance = 0; // how near a time must be to the projected one to count as on it
+	int stage = START;
+	long origin; // the beginning of the first sound of the current pattern
+	long end1; // the end of the first sound, from origin
+	long begin2; // the beginning of the second sound, from origin
+	long end2; // the end of the second sound, from origin
+	long last = Long.MIN_VALUE; // the latest time seen
+	long events = -1; // how many beginnings we've seen, less one
+
+	public ProjectionStream(long limit, Listener listener) {
+		if (null == listener) {
+			throw new IllegalArgumentException("The ProjectionStream class was passed a null Listener object");
+		}
+
+		this.limit = limit;
+		this.listener = listener;
+	}
+
+	// forget everything, and wait for a new performance
+	public void reset() {
+		stage = START;
+		last = Long.MIN_VALUE;
+		events = -1;
+	}
+
+	// a sound begins at time; false if it was rejected
+	public boolean onset(long time) {
+		if (time <= last) {
+			// not a well-defined event: ignore it
+			listener.outcome(events, Projection.REJECTED, last, time);
+			return false;
+		}
+		if ((stage == FIRST) || (stage == SECOND))
+			throw new IllegalStateException("A sound began before the last one ended");
+		last = time;
+		events++;
+
+		int code;
+		switch (stage) {
+		case START:
+			origin = time;
+			stage = FIRST;
+			break;
+		case AFTER_FIRST:
+			begin2 = time - origin;
+			code = Projection.secondBegin(end1, begin2, limit);
+			listener.outcome(events, code, origin, time);
+			if (code == 9) {
+				// no projection, but this sound can begin a new one
+				origin = time;
+				stage = FIRST;
+			} else
+				stage = SECOND;
+			break;
+		case AFTER_SECOND:
+			long begin3 = time - origin;
+			code = Projection.thirdBegin(begin2, end2, begin3, limit, tolerance);
+			if (code != Projection.NONE)
+				listener.outcome(events, code, origin + begin2, time);
+			if ((code == 21) || (code == 26)) {
+				// hiatus: a new and relatively unconditioned beginning
+				origin = time;
+				stage = FIRST;
+			} else {
+				// the second interonset duration now projects in its turn
+				origin += begin2;
+				end1 = end2 - begin2; // the second sound is the first now
+				begin2 = begin3 - begin2;
+				stage = SECOND;
+			}
+			break;
+		}
+		return true;
+	}
+
+	// the sound that began last ends at time
+	public void offset(long time) {
+		if (time <= last) {
+			listener.outcome(events, Projection.REJECTED, last, time);
+			// a sound with no duration: leave it out, as if it had never begun
+			if (stage == FIRST)
+				stage = START;
+			else if (stage == SECOND)
+				stage = AFTER_FIRST;
+			return;
+		}
+		if ((stage != FIRST) && (stage != SECOND))
+			throw new IllegalStateException("A sound ended without beginning");
+		last = time;
+
+		int code;
+		if (stage == FIRST) {
+			end1 = time - origin;
+			code = Projection.firstEnd(end1, limit);
+			listener.outcome(events, code, origin, time);
+			// a sound too long to project leaves nothing to build on
+			stage = (code == 5) ? START : AFTER_FIRST;
+		} else {
+			end2 = time - origin;
+			code = Projection.secondEnd(begin2, end2, limit, tolerance);
+			if (code != Projection.NONE)
+				listener.outcome(events, code, origin + begin2, time);
+			if (code == 15)
+				stage = START;
+			else if (code == 14) {
+				/* the projection is denied, but the potential of the
+				 *  duration begun by this sound goes on accumulating
+				 */
+				origin += begin2;
+				end1 = end2 - begin2;
+				stage = AFTER_FIRST;
+			} else
+				stage = AFTER_SECOND;
+		}
+	}
+
+	// both ends of a sound at once
+	public void event(long onset, long offset) {
+		if (onset(onset))
+			offset(offset);
+	}
+
+	public void sound(long onset, long offset) {
+		event(onset, offset);
+	}
+
+	public long getLimit() {
+		return limit;
+	}
+
+	// in the same units as the times
+	public void setTolerance(long tolerance) {
+		this.tolerance = tolerance;
+	}
+}
@@ -16,6 +16,8 @@
 
 import java.awt.*;
 import java.awt.event.*;
+import java.io.*;
+import java.util.Arrays;
 import javax.swing.event.*;
 
 /*
@@ -35,15 +37,22 @@ import javax.swing.event.*;
 public class Rhythm extends Panel {
 	CoordinateArea coordinateArea; // the area receiving the clicks
 	TextArea label; // to hold the instructions to the user
-	Button button1, button2; // the "Back one step" and "Restart" buttons
+	Button button1, button2, button3; // the "Back one step", "Restart" and "Forward one step" buttons
 	TextArea textArea; // to hold the commentary
 	// TextArea results; // not required any more: used to hold results
 	final int commWidth = 60;
 	final int commHeight = 6;
 	Point[] points; // the array of events
-	int wherein; // where we are in the array
+	// both volatile, since an active renderer's thread reads them for the HUD
+	volatile int wherein; // where we are in the array
+	volatile int message = 0; // the code of the messages showing now (-2 if we don't know)
 	String buffer = ""; // a handy constant to have, given what happens in init
 	MouseHandler mouseHandler; // a handler for the mouse events (calls into the coordinateArea)
+	InputPipeline pipeline = null; // if set, the mouse events go through here first
+	TapInput tap = null; // if set, the sounds are performed on the keyboard instead
+	InputTrace.Recorder recorder = null; // if set, everything the user does is recorded here
+	EditHistory history; // every state we've been in, for going back and forward
+	SessionJournal journal = null; // if set, every step is written here too
 	//final int row1Begin = 0; // result-associated comments
 	//final int row1End = 53;
 	//final int row2Begin = 54;
@@ -73,7 +82,13 @@ public class Rhythm extends Panel {
 			int x = event.getX();
 			int y = event.getY();
 			
-			this.area.handleMouseDown(x, y);
+			this.area.hud.input();
+			if (recorder != null)
+				recorder.click(x, y);
+			if (pipeline != null)
+				pipeline.click(x, y);
+			else
+				this.area.handleMouseDown(x, y);
 		}
 
 		// handle the mouseMoved event by passing it to the handleMouseMove method 
@@ -81,7 +96,13 @@ public class Rhythm extends Panel {
 			int x = event.getX();
 			int y = event.getY();
 			
-			this.area.handleMouseMove(x, y);
+			this.area.hud.input();
+			if (recorder != null)
+				recorder.move(x, y);
+			if (pipeline != null)
+				pipeline.move(x, y);
+			else
+				this.area.handleMouseMove(x, y);
 		}
 
 	}
@@ -93,7 +114,7 @@ public class Rhythm extends Panel {
 	final static String comm1MoveA5 = "The first sound\'s duration is so long that it is\n \"mensurally indeterminate\"--it has lost its projective\n potential to be reproduced.";
 	final static String commEnd1Right = "The first sound ends. Its duration is \"mensurally\n determinate\" because it has the potential for being\n precisely reproduced.";
 	final static String commEnd1Wrong = "The first sound ends; it is too long to have\n projective potential.";
-	final String commTooBack = buffer;
+	final static String commTooBack = ""; // blank, as buffer was when this was first set
 	final static String commPLimit = "There is a pause between the first two sounds. Its duration\n is relatively indeterminate, if our attention is focused\n on the beginning of sounds. The growing arc indicates that\n the duration of the first sound *plus* the following\n silence itself has the \"projective potential\" to be\n reproduced.";
 	final static String commPLimitEvent = "This beginning of the second sound \"realizes\" the\n projective potential of the duration begun by the first\n event\'s attack. The solid arrow represents this\n projective potential. The event now beginning has the\n potential to reproduce this past duration. The dotted arc,\n extending for this duration into the future, symbolizes this\n \"projected potential\".";
 	final static String commALimitEvent = "The second sound begins. It is so long since the beginning\n of the first event that the interonset duration is mensurally\n indeterminate--it has no potential to be reproduced--so\n there is no projection.";
@@ -103,7 +124,7 @@ public class Rhythm extends Panel {
 	final static String commP2bEvent = "The second sound ends. Its duration is \"mensurally\n determinate\" because it has the potential for being\n precisely reproduced. But it does not affect the\n projection of the first interonset duration, shown by the\n arrow and dashed arc";
 	final static String commA2bPbLimitEvent = "The second sound exceeds the duration projected at its\n onset. The projection is not clearly realized, as\n indicated by the X through the dashed arc. The projective\n potential of the duration initiated by the second\n sound\'s beginning continues to accumulate.";
 	final static String commAbPLimitEventIn2 = "The second sound is so long that it is mensurally\n indeterminate. Since the projected potential of the first\n interonset duration is denied there is no projection at all.";
-	final String commPcMove = buffer;
+	final static String commPcMove = "";
 	final static String commAcPEbPLimitMove = "The silence between the second and third sounds is\n relatively indeterminate if our attention is focused on the\n sounds\' beginnings. The growing arc indicates that the\n duration from the beginning of the second sound up to now,\n including the silence, has \"projective potential\" to be\n reproduced.";
 	final static String commAbPLimitMove = "The time since the beginning of the second sound is\n mensurally indeterminate, having no projective potential\n to be reproduced.";
 	final static String commdP2bAE175bEvent = "The beginning of the third sound is earlier than projected.\n The second interonset duration is shorter than, but at\n least three-fourths of the first interonset duration.\n We feel an *acceleration* because we sense the realization\n of the first projected duration even as we also perceive\n the difference between the two durations.";
@@ -142,6 +163,29 @@ public class Rhythm extends Panel {
 	final static String instrdB2t25Event =  "Click on \"Back one step\" to define a different third sound\n or \"Restart\" to begin again.";
 	final static String instrA25bPbPLimitEvent =  "Click on \"Back one step\" to define a different third sound\n or \"Restart\" to begin again.";
 
+	/* The messages for each code, in the order of the codes: setMessages(x)
+	 *  shows instructions[x] and comments[x].  (There are none for 26.)
+	 */
+	final static String[] comments = {
+		commIntro, comm1MoveStart, comm1MoveP5, comm1MoveA5, commEnd1Right,
+		commEnd1Wrong, commTooBack, commPLimit, commPLimitEvent, commALimitEvent,
+		commP2bMove, commA2bPbPLimitMove, commAbPLimitMoveIn2, commP2bEvent,
+		commA2bPbLimitEvent, commAbPLimitEventIn2, commPcMove,
+		commAcPEbPLimitMove, commAbPLimitMove, commdP2bAE175bEvent,
+		commdE2bEvent, commAbPLimitEvent, commdP175bEvent1, commdP175bEvent2,
+		commdB2t25Event, commA25bPbPLimitEvent
+	};
+	final static String[] instructions = {
+		instrStart, instr1MoveStart, instr1MoveP5, instr1MoveA5, instrEnd1Right,
+		instrEnd1Wrong, instrTooBack, instrPLimit, instrPLimitEvent,
+		instrALimitEvent, instrP2bMove, instrA2bPbPLimitMove,
+		instrAbPLimitMoveIn2, instrP2bEvent, instrA2bPbLimitEvent,
+		instrAbPLimitEventIn2, instrPcMove, instrAcPEbPLimitMove,
+		instrAbPLimitMove, instrdP2bAE175bEvent, instrdE2bEvent,
+		instrAbPLimitEvent, instrdP175bEvent1, instrdP175bEvent2,
+		instrdB2t25Event, instrA25bPbPLimitEvent
+	};
+
 	public void init() {
 		/* This gridbag code is used to set everything up in its
 		 *  proper place.
@@ -173,10 +217,32 @@ public class Rhythm extends Panel {
 		layout.setConstraints(coordinateArea, caConstraints);
 		add(coordinateArea);
 
+		// shade where the third sound could begin, and again if the area changes size
+		coordinateArea.heatmap = new OutcomeHeatmap(coordinateArea);
+		coordinateArea.addComponentListener(new ComponentAdapter() {
+				public void componentResized(ComponentEvent event) {
+					coordinateArea.repaint();
+				}
+			});
+
 		// add our MouseHandler class as a listener on the coordinateArea
 		this.mouseHandler = new MouseHandler(this.coordinateArea);
 		this.coordinateArea.addMouseListener(this.mouseHandler);
 		this.coordinateArea.addMouseMotionListener(this.mouseHandler);
+		// F3 shows and hides the performance figures; ctrl-Z and ctrl-Y go back and forward
+		this.coordinateArea.addKeyListener(new KeyAdapter() {
+				public void keyPressed(KeyEvent event) {
+					if (event.getKeyCode() == PerformanceHud.TOGGLE_KEY)
+						coordinateArea.hud.toggle();
+					else if (event.isControlDown() && (event.getKeyCode() == KeyEvent.VK_Z)) {
+						if (event.isShiftDown())
+							pressedForward();
+						else
+							pressedBack();
+					} else if (event.isControlDown() && (event.getKeyCode() == KeyEvent.VK_Y))
+						pressedForward();
+				}
+			});
 
 
 		/* The data for each of the points to be defined later
@@ -242,11 +308,22 @@ public class Rhythm extends Panel {
 									  }
 								  });
 
-		// I initialize the points and their associated index pointer
-		points = new Point[6];
-		for (int i = 0; i < 6; i++)
-			points[i] = null;
-		wherein = -1;
+		button3 = new Button("Forward one step");
+		GridBagConstraints b3Constraints = new GridBagConstraints();
+
+		// and this one to the right of that
+		b3Constraints.gridx = GridBagConstraints.RELATIVE;
+		layout.setConstraints(button3, b3Constraints);
+		add(button3);
+
+		button3.addActionListener(
+								  new ActionListener() {
+									  public void actionPerformed(ActionEvent e) {
+										  pressedForward();
+									  }
+								  });
+
+		initPoints();
 
 		// make the buffer big enough to erase anything else
 		for (int i = 0; i< 200; i++)
@@ -256,6 +333,25 @@ public class Rhythm extends Panel {
 		validate();
 	}
 
+	/* I initialize the points and their associated index pointer.  This is
+	 *  all a Rhythm needs to run without a display (as MoveSweep does); the
+	 *  text areas are simply left out.
+	 */
+	void initPoints() {
+		points = new Point[6];
+		for (int i = 0; i < 6; i++)
+			points[i] = null;
+		wherein = -1;
+		history = new EditHistory(this);
+	}
+
+	// show some text in the instructions box that isn't one of the messages
+	void setLabel(String text) {
+		message = -2;
+		if (label != null)
+			label.setText(text);
+	}
+
 	/* This method is the main workhorse of the class; it serves to control
 	 *  the points and their array, to the point of deciding whether or not
 	 *  to add a new one and printing associated status messages.  It is
@@ -265,8 +361,8 @@ public class Rhythm extends Panel {
 		for(int i = 0; i <= wherein; i++) { // for each earlier point
 			if (points[i].x >= x) { // make sure it preceedes the current
 				//...otherwise complain and die
-				label.setText("Not a well-defined event. Try again");
-				coordinateArea.backOne(wherein + 2);
+				setLabel("Not a well-defined event. Try again");
+				DemoEvents.newPoint(x, y, wherein, false);
 				repaint();
 				return;
 			}
@@ -277,6 +373,7 @@ public class Rhythm extends Panel {
 			points[wherein] = new Point(x, y);
 		else
 			points[wherein] = new Point(0, y);
+		DemoEvents.newPoint(x, y, wherein, true);
 		// print the status message
 		//int val =
 		Math.round((x/(coordinateArea.unitLength/(float)(coordinateArea.interval))))
@@ -307,116 +404,22 @@ public class Rhythm extends Panel {
 		repaint();
 	}
 
+	/* Shows the instructions and commentary for message x.  Rewriting the
+	 *  text areas is slow, so nothing happens if they already show it.
+	 */
 	public void setMessages(int x) {
-		switch (x) {
-		case -1:
+		if (x == message)
+			return;
+		DemoEvents.messageChange(message, x);
+		message = x;
+		if (label == null)
+			return;
+		if (x == -1) {
 			label.setText("");
 			textArea.setText("");
-			break;
-		case 0:
-			label.setText(instrStart);
-			textArea.setText(commIntro);
-			break;
-		case 1:
-			label.setText(instr1MoveStart);
-			textArea.setText(comm1MoveStart);
-			break;
-		case 2:
-			label.setText(instr1MoveP5);
-			textArea.setText(comm1MoveP5);
-			break;
-		case 3:
-			label.setText(instr1MoveA5);
-			textArea.setText(comm1MoveA5);
-			break;
-		case 4:
-			label.setText(instrEnd1Right);
-			textArea.setText(commEnd1Right);
-			break;
-		case 5:
-			label.setText(instrEnd1Wrong);
-			textArea.setText(commEnd1Wrong);
-			break;
-		case 6:
-			label.setText(instrTooBack);
-			textArea.setText(commTooBack);
-			break;
-		case 7:
-			label.setText(instrPLimit);
-			textArea.setText(commPLimit);
-			break;
-		case 8:
-			label.setText(instrPLimitEvent);
-			textArea.setText(commPLimitEvent);
-			break;
-		case 9:
-			label.setText(instrALimitEvent);
-			textArea.setText(commALimitEvent);
-			break;
-		case 10:
-			label.setText(instrP2bMove);
-			textArea.setText(commP2bMove);
-			break;
-		case 11:
-			label.setText(instrA2bPbPLimitMove);
-			textArea.setText(commA2bPbPLimitMove);
-			break;
-		case 12:
-			label.setText(instrAbPLimitMoveIn2);
-			textArea.setText(commAbPLimitMoveIn2);
-			break;
-		case 13:
-			label.setText(instrP2bEvent);
-			textArea.setText(commP2bEvent);
-			break;
-		case 14:
-			label.setText(instrA2bPbLimitEvent);
-			textArea.setText(commA2bPbLimitEvent);
-			break;
-		case 15:
-			label.setText(instrAbPLimitEventIn2);
-			textArea.setText(commAbPLimitEventIn2);
-			break;
-		case 16:
-			label.setText(instrPcMove);
-			textArea.setText(commPcMove);
-			break;
-		case 17:
-			label.setText(instrAcPEbPLimitMove);
-			textArea.setText(commAcPEbPLimitMove);
-			break;
-		case 18:
-			label.setText(instrAbPLimitMove);
-			textArea.setText(commAbPLimitMove);
-			break;
-		case 19:
-			label.setText(instrdP2bAE175bEvent);
-			textArea.setText(commdP2bAE175bEvent);
-			break;
-		case 20:
-			label.setText(instrdE2bEvent);
-			textArea.setText(commdE2bEvent);
-			break;
-		case 21:
-			label.setText(instrAbPLimitEvent);
-			textArea.setText(commAbPLimitEvent);
-			break;
-		case 22:
-			label.setText(instrdP175bEvent1);
-			textArea.setText(commdP175bEvent1);
-			break;
-		case 23:
-			label.setText(instrdP175bEvent2);
-			textArea.setText(commdP175bEvent2);
-			break;
-		case 24:
-			label.setText(instrdB2t25Event);
-			textArea.setText(commdB2t25Event);
-			break;
-		case 25:
-			label.setText(instrA25bPbPLimitEvent);
-			textArea.setText(commA25bPbPLimitEvent);
-			break;
+		} else if ((x >= 0) && (x < comments.length)) {
+			label.setText(instructions[x]);
+			textArea.setText(comments[x]);
 		}
 		repaint();
 	}
@@ -427,50 +430,163 @@ public class Rhythm extends Panel {
 		return points[which];
 	}
 
-	private void pressedBack() {
-		if (wherein >= 0) { // make sure we really can
-			points[wherein--] = null;
-			if (wherein == 4)
-				points[wherein--] = null;
-			// print a status message and update the display
-			label.setText("Stepped back");
-			coordinateArea.repaint();
-			coordinateArea.backOne(wherein + 1);
-		}
+	// go back to the state before the last step (a click or a restart)
+	void pressedBack() {
+		if (recorder != null)
+			recorder.back();
+		if (history.undo() && (journal != null))
+			journal.back();
+	}
 
-		return;
+	// ... and forward again to the one we came back from
+	void pressedForward() {
+		if (recorder != null)
+			recorder.forward();
+		if (history.redo() && (journal != null))
+			journal.forward();
 	}
 
-	private void pressedRestart() {
+	void pressedRestart() {
+		if (recorder != null)
+			recorder.restart();
 		// just reset all the data
 		wherein = -1;
 		for (int i = 0; i < 6; i++)
 			points[i] = null;
-		//... print a status message, and repaint
+		//... print a status message, and repaint (restart does that)
 		setMessages(0);
-		coordinateArea.repaint();
 		coordinateArea.restart();
+		// a restart is a step too, so Back undoes it
+		history.commit();
+		if (journal != null)
+			journal.restart();
 	}
 
 	public int getWherein() {
 		return wherein;
 	}
 
+	/* The options are:
+	 *  -active   draw the diagram from a render thread (see ActiveRenderer)
+	 *  -coalesce handle the mouse once a frame (see InputPipeline)
+	 *  -tap      perform the sounds on the keyboard (see TapInput)
+	 *  -limit s  how many seconds the limit lasts, when tapping
+	 *  -tolerance ms  how near a tap must be to the projected time to be on it
+	 *  -record file   record everything the user does (see InputTrace)
+	 *  -journal file  keep the session in file, and pick it up from there
+	 *                 next time (see SessionJournal)
+	 *  -hud      show the performance figures from the start (F3 toggles them)
+	 *  -cli [file]    no window: classify the sounds in file, or on standard
+	 *                 input, and write the outcomes out (see ClassifyPipeline)
+	 */
 	public static void main(String argv[]) {
+		boolean active = false;
+		boolean coalesce = false;
+		boolean tapping = false;
+		double limit = MidiSource.defaultLimitSeconds;
+		double tolerance = 20;
+		String record = null;
+		String journal = null;
+		boolean hud = false;
+		for (int i = 0; i < argv.length; i++) {
+			if (argv[i].equals("-active"))
+				active = true;
+			else if (argv[i].equals("-coalesce"))
+				coalesce = true;
+			else if (argv[i].equals("-tap"))
+				tapping = true;
+			else if (argv[i].equals("-limit") && (i + 1 < argv.length))
+				limit = Double.parseDouble(argv[++i]);
+			else if (argv[i].equals("-tolerance") && (i + 1 < argv.length))
+				tolerance = Double.parseDouble(argv[++i]);
+			else if (argv[i].equals("-hud"))
+				hud = true;
+			else if (argv[i].equals("-record") && (i + 1 < argv.length))
+				record = argv[++i];
+			else if (argv[i].equals("-journal") && (i + 1 < argv.length))
+				journal = argv[++i];
+			else if (argv[i].equals("-cli")) {
+				// the rest is for the pipeline
+				ClassifyPipeline.main(Arrays.copyOfRange(argv, i + 1, argv.length));
+				return;
+			} else {
+				System.err.println("Unknown option " + argv[i]);
+				System.exit(1);
+			}
+		}
+
   	Frame frame = new Frame();
+    final Rhythm rhythm = new Rhythm();
 		frame.addWindowListener(new WindowAdapter() {
 				 public void windowClosing(WindowEvent event) {
+				   if (rhythm.pipeline != null)
+					   System.err.println(rhythm.pipeline);
+				   if (rhythm.tap != null)
+					   System.err.println(rhythm.tap);
+				   if (rhythm.recorder != null) {
+					   try {
+						   rhythm.recorder.close();
+						   System.err.println("Recorded " + rhythm.recorder.getEvents() + " events");
+					   } catch (IOException e) {
+						   System.err.println("Couldn't finish the recording: " + e.getMessage());
+					   }
+				   }
+				   if (rhythm.journal != null) {
+					   try {
+						   rhythm.journal.close();
+					   } catch (IOException e) {
+						   System.err.println("Couldn't finish the journal: " + e.getMessage());
+					   }
+				   }
 				   System.exit(0);
 				 };
 			 });
 
-    Rhythm rhythm = new Rhythm();
     rhythm.setSize(400, 350);
     frame.add(rhythm);
     frame.pack();
     rhythm.init();
     frame.setSize(400,450);
+		// before the window shows: once it does, the event thread paints and
+		//  takes clicks, and the journal has to be there for the first one
+		if (journal != null) {
+			if (tapping) {
+				// the taps' times aren't part of the state, so they can't be picked up again
+				System.err.println("A session of taps can't be journaled");
+				System.exit(1);
+			}
+			try {
+				SessionJournal.open(new File(journal), rhythm);
+			} catch (IOException e) {
+				System.err.println("Can't keep a journal in " + journal + ": " + e.getMessage());
+				System.exit(1);
+			}
+		}
     frame.setVisible(true);
+		if (active)
+			rhythm.coordinateArea.startActiveRendering();
+		if (coalesce) {
+			rhythm.pipeline = new InputPipeline(rhythm.coordinateArea);
+			rhythm.pipeline.start();
+		}
+		if (hud)
+			rhythm.coordinateArea.hud.setVisible(true);
+		if (record != null) {
+			try {
+				rhythm.recorder = new InputTrace.Recorder(new File(record),
+					rhythm.coordinateArea.getWidth(), rhythm.coordinateArea.getHeight());
+			} catch (IOException e) {
+				System.err.println("Can't record to " + record + ": " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		if (tapping) {
+			// the mouse would fight the keyboard over the diagram
+			rhythm.coordinateArea.removeMouseListener(rhythm.mouseHandler);
+			rhythm.coordinateArea.removeMouseMotionListener(rhythm.mouseHandler);
+			rhythm.tap = new TapInput(rhythm, rhythm.coordinateArea, limit, tolerance);
+			rhythm.tap.start();
+		}
 	}
 
 }
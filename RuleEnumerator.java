@@ -0,0 +1,460 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * Runs the projection rules over every performance of three sounds that
+ *  fits on a grid of times, to see what the rules can and can't say: which
+ *  message codes some performance reaches and which none does, and where
+ *  none of the rules applies at all.
+ *
+ *  A performance is the end of the first sound (its beginning is 0), the
+ *  beginning and end of the second and the beginning of the third, each
+ *  later than the last.  Where the demo stops (5, 9, 14 and 15), the times
+ *  after are never looked at, so they aren't enumerated.  And for the
+ *  third beginning, the comparisons in thirdBegin only change their minds
+ *  at a handful of times (7/4 and 5/2 of where, 2*where, where + limit and
+ *  so on), so between those, every beginning gets the same code: those
+ *  runs are counted, not walked.
+ *
+ *  Nothing is kept per performance.  The performances are gathered into
+ *  regions by the codes they bring at each event, and each region keeps
+ *  how many performances it has, the range of each time among them, and
+ *  one of them as an example.  The work is split up by the beginning of
+ *  the second sound on a fork/join pool, where idle threads steal it.
+ *
+ *  With -moves, the real CoordinateArea is driven instead: every sequence
+ *  of clicks on the grid, and then the mouse moved across the whole
+ *  canvas, to see which codes the moves can bring.
+ *
+ *  Usage: java RuleEnumerator [-step n] [-scale k] [-horizon t] [-tolerance t]
+ *                             [-threads n] [-moves]
+ */
+public class RuleEnumerator {
+	final static int STAGES = 4; // the events the rules decide something about
+	final static int SKIPPED = -3; // the demo had stopped before this event
+	final static int GRAIN = 8; // second beginnings a task takes on by itself
+	final static String[] stageNames = { "end1", "begin2", "end2", "begin3" };
+
+	// every performance whose events brought the same codes
+	static class Region {
+		final int[] codes = new int[STAGES]; // NONE if no rule applied, SKIPPED if the demo had stopped
+		long count = 0;
+		long[] min = new long[STAGES], max = new long[STAGES]; // the range of each time
+		long[] example = null;
+
+		Region(int key) {
+			for (int s = 0; s < STAGES; s++) {
+				codes[s] = key%32 - 3;
+				key /= 32;
+			}
+			Arrays.fill(min, Long.MAX_VALUE);
+			Arrays.fill(max, Long.MIN_VALUE);
+		}
+
+		// add count performances, with times from low to high
+		void add(long count, long[] low, long[] high) {
+			if (this.count == 0)
+				example = low.clone();
+			this.count += count;
+			for (int s = 0; s < STAGES; s++) {
+				if (codes[s] == SKIPPED)
+					continue;
+				min[s] = Math.min(min[s], low[s]);
+				max[s] = Math.max(max[s], high[s]);
+			}
+		}
+
+		void add(Region other) {
+			if (other.count == 0)
+				return;
+			if (count == 0)
+				example = other.example;
+			count += other.count;
+			for (int s = 0; s < STAGES; s++) {
+				min[s] = Math.min(min[s], other.min[s]);
+				max[s] = Math.max(max[s], other.max[s]);
+			}
+		}
+	}
+
+	// the regions found so far, by the codes at each event
+	static class Regions {
+		Map<Integer, Region> regions = new HashMap<Integer, Region>();
+		long[] low = new long[STAGES], high = new long[STAGES]; // scratch
+
+		static int key(int c1, int c2, int c3, int c4) {
+			return (c1 + 3) + 32*((c2 + 3) + 32*((c3 + 3) + 32*(c4 + 3)));
+		}
+
+		void add(int key, long count) {
+			Region r = regions.get(key);
+			if (r == null) {
+				r = new Region(key);
+				regions.put(key, r);
+			}
+			r.add(count, low, high);
+		}
+
+		void add(Regions other) {
+			for (Map.Entry<Integer, Region> e : other.regions.entrySet()) {
+				Region r = regions.get(e.getKey());
+				if (r == null)
+					regions.put(e.getKey(), e.getValue());
+				else
+					r.add(e.getValue());
+			}
+		}
+	}
+
+	long step; // the grid
+	long limit;
+	long horizon; // the latest time on the grid
+	long tolerance;
+	long performances = 0;
+
+	public RuleEnumerator(long step, long limit, long horizon, long tolerance) {
+		this.step = step;
+		this.limit = limit;
+		this.horizon = horizon - horizon%step;
+		this.tolerance = tolerance;
+	}
+
+	// the first time on the grid at or after t
+	long ceil(long t) {
+		return Math.max(step, Math.floorDiv(t + step - 1, step)*step);
+	}
+
+	// the performances whose first sound ends at e1 and second begins in [from, to]
+	@SuppressWarnings("serial")
+	class Slab extends RecursiveTask<Regions> {
+		final long e1, from, to;
+
+		Slab(long e1, long from, long to) {
+			this.e1 = e1;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected Regions compute() {
+			if ((to - from)/step >= GRAIN) {
+				long middle = from + ((to - from)/step/2)*step;
+				Slab left = new Slab(e1, from, middle);
+				left.fork();
+				Regions regions = new Slab(e1, middle + step, to).compute();
+				regions.add(left.join());
+				return regions;
+			}
+			Regions regions = new Regions();
+			int c1 = Projection.firstEnd(e1, limit);
+			for (long b2 = from; b2 <= to; b2 += step)
+				second(regions, c1, b2);
+			return regions;
+		}
+
+		void second(Regions regions, int c1, long b2) {
+			long[] low = regions.low, high = regions.high;
+			low[0] = high[0] = e1;
+			low[1] = high[1] = b2;
+			int c2 = Projection.secondBegin(e1, b2, limit);
+			if (c2 == 9) {
+				regions.add(Regions.key(c1, c2, SKIPPED, SKIPPED), 1);
+				return;
+			}
+			for (long e2 = b2 + step; e2 <= horizon; e2 += step) {
+				low[2] = high[2] = e2;
+				int c3 = Projection.secondEnd(b2, e2, limit, tolerance);
+				if ((c3 == 14) || (c3 == 15)) {
+					regions.add(Regions.key(c1, c2, c3, SKIPPED), 1);
+					continue;
+				}
+				third(regions, c1, c2, c3, b2, e2);
+			}
+		}
+
+		/* every beginning of the third sound after e2, a run of them at a
+		 *  time: between any two neighbouring thresholds, each comparison
+		 *  in thirdBegin comes out the same way
+		 */
+		void third(Regions regions, int c1, int c2, int c3, long w, long e2) {
+			long[] at = thresholds;
+			int n = 0;
+			at[n++] = e2 + 1;
+			at[n++] = 2*w - tolerance;
+			at[n++] = Math.floorDiv(7*w + 3, 4); // 4x >= 7w from here
+			at[n++] = 2*w + tolerance + 1;
+			at[n++] = w + limit;
+			at[n++] = w + limit + 1;
+			at[n++] = Math.floorDiv(5*w + 1, 2); // 2x < 5w no longer
+			at[n++] = Math.floorDiv(5*w, 2) + 1; // 2x > 5w from here
+			at[n++] = horizon + 1;
+			Arrays.sort(at, 0, n);
+			long[] low = regions.low, high = regions.high;
+			for (int i = 0; i + 1 < n; i++) {
+				long a = Math.max(at[i], e2 + 1), b = Math.min(at[i + 1], horizon + 1);
+				if (a >= b)
+					continue;
+				long first = ceil(a), last = Math.floorDiv(b - 1, step)*step;
+				if (first > last)
+					continue;
+				low[3] = first;
+				high[3] = last;
+				int c4 = Projection.thirdBegin(w, e2, first, limit, tolerance);
+				regions.add(Regions.key(c1, c2, c3, c4), (last - first)/step + 1);
+			}
+		}
+
+		long[] thresholds = new long[9];
+	}
+
+	// every performance, by the end of the first sound
+	@SuppressWarnings("serial")
+	class Enumerate extends RecursiveTask<Regions> {
+		final long from, to;
+
+		Enumerate(long from, long to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		protected Regions compute() {
+			if (from == to) {
+				Regions regions;
+				int c1 = Projection.firstEnd(from, limit);
+				if ((c1 == 5) || (from + step > horizon)) {
+					// the demo stops here (or there's no room for a second sound)
+					regions = new Regions();
+					regions.low[0] = regions.high[0] = from;
+					regions.add(Regions.key(c1, SKIPPED, SKIPPED, SKIPPED), 1);
+				} else
+					regions = new Slab(from, from + step, horizon).compute();
+				return regions;
+			}
+			long middle = from + ((to - from)/step/2)*step;
+			Enumerate left = new Enumerate(from, middle);
+			left.fork();
+			Regions regions = new Enumerate(middle + step, to).compute();
+			regions.add(left.join());
+			return regions;
+		}
+	}
+
+	public Regions run(ForkJoinPool pool) {
+		Regions regions = pool.invoke(new Enumerate(step, horizon));
+		performances = 0;
+		for (Region r : regions.regions.values())
+			performances += r.count;
+		return regions;
+	}
+
+	String code(int code) {
+		return (code == SKIPPED) ? "." : (code == Projection.NONE) ? "none" : Integer.toString(code);
+	}
+
+	// the regions, then which codes were and weren't reached
+	void print(Regions found, PrintStream out) {
+		List<Region> regions = new ArrayList<Region>(found.regions.values());
+		Collections.sort(regions, new Comparator<Region>() {
+				public int compare(Region a, Region b) {
+					for (int s = 0; s < STAGES; s++)
+						if (a.codes[s] != b.codes[s])
+							return Integer.compare(a.codes[s], b.codes[s]);
+					return 0;
+				}
+			});
+		out.println("codes at end1 begin2 end2 begin3, performances, range of each time, example");
+		boolean[] reached = new boolean[OutcomeCounts.CODES];
+		List<Region> gaps = new ArrayList<Region>();
+		for (Region r : regions) {
+			StringBuilder line = new StringBuilder();
+			for (int s = 0; s < STAGES; s++)
+				line.append(code(r.codes[s])).append(s + 1 < STAGES ? " " : "\t");
+			line.append(r.count);
+			for (int s = 0; s < STAGES; s++) {
+				if (r.codes[s] != SKIPPED)
+					line.append("\t").append(stageNames[s]).append(" ").append(r.min[s]).append("..").append(r.max[s]);
+				if (r.codes[s] >= 0)
+					reached[r.codes[s]] = true;
+			}
+			line.append("\te.g.");
+			for (int s = 0; s < STAGES; s++)
+				if (r.codes[s] != SKIPPED)
+					line.append(" ").append(r.example[s]);
+			out.println(line);
+			// no rule for the third beginning, or for the end of the second, is a gap in the rules
+			if ((r.codes[3] == Projection.NONE) || (r.codes[2] == Projection.NONE))
+				gaps.add(r);
+		}
+		out.println(performances + " performances on a grid of " + step + " up to " + horizon
+					+ " (limit " + limit + ", tolerance " + tolerance + ") in "
+					+ regions.size() + " regions");
+		StringBuilder never = new StringBuilder();
+		for (int c = 0; c < OutcomeCounts.CODES; c++)
+			if (!reached[c])
+				never.append(" ").append(c);
+		out.println("codes the rules never give:" + never);
+		if (reached[22])
+			out.println("  (23 is given by clicking again after 22, in handleMouseDown)");
+		for (Region r : gaps) {
+			int s = (r.codes[2] == Projection.NONE) ? 2 : 3;
+			out.println("no rule applies at " + stageNames[s] + " in " + r.count
+						+ " performances, e.g. " + Arrays.toString(r.example));
+		}
+	}
+
+	/* Which codes moving the mouse can bring: each sequence of clicks on
+	 *  the grid, in a CoordinateArea of its own for each thread, and then
+	 *  a move to every x on the grid.
+	 */
+	@SuppressWarnings("serial")
+	class Moves extends RecursiveTask<long[]> {
+		final long e1From, e1To; // the ends of the first sound this task tries
+		final ThreadLocal<CoordinateArea> areas;
+
+		Moves(long e1From, long e1To, ThreadLocal<CoordinateArea> areas) {
+			this.e1From = e1From;
+			this.e1To = e1To;
+			this.areas = areas;
+		}
+
+		// what the moves brought: a bit for each code, and then an example sequence of clicks for each
+		protected long[] compute() {
+			if (e1To > e1From) {
+				long middle = e1From + ((e1To - e1From)/step/2)*step;
+				Moves left = new Moves(e1From, middle, areas);
+				left.fork();
+				long[] found = new Moves(middle + step, e1To, areas).compute();
+				merge(found, left.join());
+				return found;
+			}
+			long[] found = new long[1 + OutcomeCounts.CODES];
+			CoordinateArea area = areas.get();
+			long e1 = e1From;
+			if (e1 == step)
+				sweep(area, found, new int[] { 0 }); // the first sound only begun
+			sweep(area, found, new int[] { 0, (int)e1 });
+			for (long b2 = e1 + step; b2 <= horizon; b2 += step) {
+				sweep(area, found, new int[] { 0, (int)e1, (int)b2 });
+				for (long e2 = b2 + step; e2 <= horizon; e2 += step)
+					sweep(area, found, new int[] { 0, (int)e1, (int)b2, (int)e2 });
+			}
+			return found;
+		}
+
+		void sweep(CoordinateArea area, long[] found, int[] clicks) {
+			Rhythm rhythm = area.controller;
+			rhythm.initPoints();
+			area.restart();
+			for (int i = 0; i < clicks.length; i++)
+				area.handleMouseDown(clicks[i], TapInput.Y);
+			if (area.done)
+				return;
+			for (long x = 0; x <= horizon; x += step) {
+				rhythm.message = -3; // nothing: so we see whether the move set one
+				area.handleMouseMove((int)x, TapInput.Y);
+				int code = rhythm.message;
+				if ((code >= 0) && ((found[0] & (1L << code)) == 0)) {
+					found[0] |= 1L << code;
+					// the clicks, packed, and then where the move was
+					long example = 0;
+					for (int i = 0; i < clicks.length; i++)
+						example = (example << 12) | clicks[i];
+					found[1 + code] = (((long)clicks.length) << 60) | (example << 12) | x;
+				}
+			}
+		}
+	}
+
+	static void merge(long[] into, long[] from) {
+		for (int c = 0; c < OutcomeCounts.CODES; c++)
+			if (((from[0] & (1L << c)) != 0) && ((into[0] & (1L << c)) == 0))
+				into[1 + c] = from[1 + c];
+		into[0] |= from[0];
+	}
+
+	void printMoves(long[] found, PrintStream out) {
+		int[] moveCodes = { 1, 2, 3, 6, 7, 10, 11, 12, 16, 17, 18 }; // the codes handleMouseMove can set
+		for (int i = 0; i < moveCodes.length; i++) {
+			int c = moveCodes[i];
+			if ((found[0] & (1L << c)) == 0) {
+				out.println(c + "\tnever brought by a move");
+				continue;
+			}
+			long e = found[1 + c];
+			int clicks = (int)(e >>> 60);
+			StringBuilder at = new StringBuilder();
+			for (int k = clicks - 1; k >= 0; k--)
+				at.append(" ").append((e >>> (12 + 12*k)) & 0xfff);
+			out.println(c + "\te.g. a move to " + (e & 0xfff) + " after clicks at" + at);
+		}
+		out.println("moves to every " + step + " pixels up to " + horizon
+					+ " after every sequence of clicks on the same grid");
+	}
+
+	public static void main(String argv[]) {
+		long step = 1, scale = 1, horizon = 3*Projection.unitLength, tolerance = 0;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean moves = false;
+		for (int i = 0; i < argv.length; i++) {
+			if (argv[i].equals("-step") && (i + 1 < argv.length))
+				step = Long.parseLong(argv[++i]);
+			else if (argv[i].equals("-scale") && (i + 1 < argv.length))
+				scale = Long.parseLong(argv[++i]);
+			else if (argv[i].equals("-horizon") && (i + 1 < argv.length))
+				horizon = Long.parseLong(argv[++i]);
+			else if (argv[i].equals("-tolerance") && (i + 1 < argv.length))
+				tolerance = Long.parseLong(argv[++i]);
+			else if (argv[i].equals("-threads") && (i + 1 < argv.length))
+				threads = Integer.parseInt(argv[++i]);
+			else if (argv[i].equals("-moves"))
+				moves = true;
+			else {
+				System.err.println("Usage: java RuleEnumerator [-step n] [-scale k] [-horizon t]"
+								   + " [-tolerance t] [-threads n] [-moves]");
+				System.exit(1);
+			}
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long start = System.nanoTime();
+		if (moves) {
+			// the canvas is in pixels, so no scaling, and not too fine a grid unless asked
+			final RuleEnumerator e = new RuleEnumerator(Math.max(step, 1), Projection.unitLength,
+														Math.min(horizon, 4000), 0);
+			ThreadLocal<CoordinateArea> areas = new ThreadLocal<CoordinateArea>() {
+					protected CoordinateArea initialValue() {
+						Rhythm rhythm = new Rhythm();
+						rhythm.initPoints();
+						CoordinateArea area = new CoordinateArea(rhythm);
+						rhythm.coordinateArea = area;
+						area.drawing = false;
+						return area;
+					}
+				};
+			long[] found = pool.invoke(e.new Moves(e.step, e.horizon - 2*e.step, areas));
+			e.printMoves(found, System.out);
+		} else {
+			RuleEnumerator e = new RuleEnumerator(step, scale*Projection.unitLength,
+												  scale*horizon, tolerance);
+			e.print(e.run(pool), System.out);
+		}
+		pool.shutdown();
+		System.err.println(String.format("%.2f s on %d threads", (System.nanoTime() - start)/1e9, threads));
+	}
+}
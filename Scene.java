@@ -0,0 +1,511 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.awt.*;
+import java.awt.font.*;
+import java.awt.geom.*;
+import java.io.*;
+import java.util.*;
+
+/*
+ * A retained picture of the diagram.  The drawing code records its lines,
+ *  arcs, rectangles, strings and images here, part by part, instead of drawing
+ *  them straight away.  Each part remembers what it recorded last time,
+ *  so after a change we know exactly which parts are different and can
+ *  repaint just the rectangles they cover.  The shapes and glyphs are
+ *  only built when a part changes, and painting draws only the parts
+ *  inside the clip.
+ *
+ *  Recording doesn't allocate once the buffers have grown to fit, so it
+ *  can run on every move of the mouse.
+ */
+public class Scene {
+	// the primitives, and how many ints each takes in a part's buffer
+	final static int LINE = 0; // x1, y1, x2, y2
+	final static int ARC = 1; // x, y, width, height, start, extent
+	final static int RECT = 2; // x, y, width, height (filled)
+	final static int TEXT = 3; // which string, x, y
+	final static int IMAGE = 4; // which image, x, y
+	final static int[] sizes = { 5, 7, 5, 4, 4 };
+
+	// one part of the diagram
+	static class Part {
+		int[] ops = new int[64]; // what was recorded this time
+		int length = 0;
+		String[] texts = new String[4];
+		int textCount = 0;
+		int[] oldOps = new int[64]; // ... and last time
+		int oldLength = 0;
+		String[] oldTexts = new String[4];
+		int oldTextCount = 0;
+		Image[] images = new Image[1]; // images are the same only if they're the same object
+		int imageCount = 0;
+		Image[] oldImages = new Image[1];
+		int oldImageCount = 0;
+		int minX, minY, maxX, maxY; // what the part covers now
+		int oldMinX, oldMinY, oldMaxX, oldMaxY; // ... and what it covered
+		boolean stale = true; // do the shapes need rebuilding?
+		Path2D.Float lines = new Path2D.Float(); // the lines and arcs to stroke
+		Path2D.Float fills = new Path2D.Float(); // the rectangles to fill
+		GlyphVector[] glyphs = new GlyphVector[4]; // the strings, laid out
+		int glyphCount = 0;
+		boolean published = false; // does the latest snapshot have it as it is now?
+	}
+
+	/* A copy of the picture that never changes, for drawing on another
+	 *  thread.  Parts that haven't changed since the last snapshot share
+	 *  its arrays, so taking one only copies what changed.
+	 */
+	public static class Snapshot {
+		final int[][] ops;
+		final int[] lengths;
+		final String[][] texts;
+		final Image[][] images;
+
+		Snapshot(int count) {
+			ops = new int[count][];
+			lengths = new int[count];
+			texts = new String[count][];
+			images = new Image[count][];
+		}
+
+		// draw the whole picture on g, as it was when the snapshot was taken
+		public void paint(Graphics g) {
+			for (int i = 0; i < ops.length; i++)
+				draw(g, ops[i], lengths[i], texts[i], images[i]);
+		}
+
+		// how many primitives there are in the picture
+		public int count() {
+			int count = 0;
+			for (int i = 0; i < ops.length; i++)
+				for (int k = 0; k < lengths[i]; k += sizes[ops[i][k]])
+					count++;
+			return count;
+		}
+	}
+
+	Snapshot lastSnapshot = null;
+
+	Part[] parts;
+	Part current = null; // the part we're recording into
+	int fontSize = 12; // used to guess how much room a string takes
+	Font glyphFont = null; // the font the cached glyphs were made with
+	Map<String, GlyphVector> glyphCache = new HashMap<String, GlyphVector>();
+	int primitives = 0; // how many primitives the last paint drew
+
+	public Scene(int count) {
+		parts = new Part[count];
+		for (int i = 0; i < count; i++)
+			parts[i] = new Part();
+	}
+
+	// start recording a new picture; every part begins empty
+	public void open() {
+		for (int i = 0; i < parts.length; i++) {
+			Part p = parts[i];
+			int[] ops = p.oldOps;
+			p.oldOps = p.ops;
+			p.ops = ops;
+			p.oldLength = p.length;
+			p.length = 0;
+			String[] texts = p.oldTexts;
+			p.oldTexts = p.texts;
+			p.texts = texts;
+			p.oldTextCount = p.textCount;
+			p.textCount = 0;
+			Image[] images = p.oldImages;
+			p.oldImages = p.images;
+			p.images = images;
+			p.oldImageCount = p.imageCount;
+			p.imageCount = 0;
+			p.oldMinX = p.minX;
+			p.oldMinY = p.minY;
+			p.oldMaxX = p.maxX;
+			p.oldMaxY = p.maxY;
+			p.minX = p.minY = Integer.MAX_VALUE;
+			p.maxX = p.maxY = Integer.MIN_VALUE;
+		}
+		current = null;
+	}
+
+	// what follows goes into part which
+	public void part(int which) {
+		current = parts[which];
+	}
+
+	/* finish the picture, and ask target to repaint every rectangle that
+	 *  changed since the last one (if there is a target)
+	 */
+	public void close(Component target) {
+		for (int i = 0; i < parts.length; i++) {
+			Part p = parts[i];
+			if (same(p))
+				continue;
+			p.stale = true;
+			p.published = false;
+			if (target == null)
+				continue;
+			if (p.oldLength > 0)
+				target.repaint(p.oldMinX, p.oldMinY,
+							   p.oldMaxX - p.oldMinX + 1, p.oldMaxY - p.oldMinY + 1);
+			if (p.length > 0)
+				target.repaint(p.minX, p.minY,
+							   p.maxX - p.minX + 1, p.maxY - p.minY + 1);
+		}
+		current = null;
+	}
+
+	// take a snapshot of the picture as it was last closed
+	public Snapshot snapshot() {
+		Snapshot snap = new Snapshot(parts.length);
+		for (int i = 0; i < parts.length; i++) {
+			Part p = parts[i];
+			if (p.published && (lastSnapshot != null)) {
+				snap.ops[i] = lastSnapshot.ops[i];
+				snap.lengths[i] = lastSnapshot.lengths[i];
+				snap.texts[i] = lastSnapshot.texts[i];
+				snap.images[i] = lastSnapshot.images[i];
+			} else {
+				snap.ops[i] = Arrays.copyOf(p.ops, p.length);
+				snap.lengths[i] = p.length;
+				snap.texts[i] = Arrays.copyOf(p.texts, p.textCount);
+				snap.images[i] = Arrays.copyOf(p.images, p.imageCount);
+				p.published = true;
+			}
+		}
+		lastSnapshot = snap;
+		return snap;
+	}
+
+	// did part p record just what it did last time?
+	static boolean same(Part p) {
+		if ((p.length != p.oldLength) || (p.textCount != p.oldTextCount)
+			|| (p.imageCount != p.oldImageCount))
+			return false;
+		for (int i = 0; i < p.length; i++)
+			if (p.ops[i] != p.oldOps[i])
+				return false;
+		for (int i = 0; i < p.textCount; i++)
+			if (!p.texts[i].equals(p.oldTexts[i]))
+				return false;
+		for (int i = 0; i < p.imageCount; i++)
+			if (p.images[i] != p.oldImages[i])
+				return false;
+		return true;
+	}
+
+	/* The primitives.  These have the same names and arguments as the ones
+	 *  in Graphics, so the drawing code reads the same either way.
+	 */
+	public void drawLine(int x1, int y1, int x2, int y2) {
+		int[] ops = grow(5);
+		int n = current.length;
+		ops[n] = LINE;
+		ops[n + 1] = x1;
+		ops[n + 2] = y1;
+		ops[n + 3] = x2;
+		ops[n + 4] = y2;
+		current.length += 5;
+		cover(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2));
+	}
+
+	public void drawArc(int x, int y, int width, int height, int start, int extent) {
+		int[] ops = grow(7);
+		int n = current.length;
+		ops[n] = ARC;
+		ops[n + 1] = x;
+		ops[n + 2] = y;
+		ops[n + 3] = width;
+		ops[n + 4] = height;
+		ops[n + 5] = start;
+		ops[n + 6] = extent;
+		current.length += 7;
+		// the whole ellipse is more than we need, but it's cheap to work out
+		cover(x, y, x + Math.max(width, 0), y + Math.max(height, 0));
+	}
+
+	public void fillRect(int x, int y, int width, int height) {
+		int[] ops = grow(5);
+		int n = current.length;
+		ops[n] = RECT;
+		ops[n + 1] = x;
+		ops[n + 2] = y;
+		ops[n + 3] = width;
+		ops[n + 4] = height;
+		current.length += 5;
+		cover(x, y, x + width, y + height);
+	}
+
+	public void drawString(String str, int x, int y) {
+		Part p = current;
+		if (p.textCount == p.texts.length)
+			p.texts = Arrays.copyOf(p.texts, 2*p.texts.length);
+		int[] ops = grow(4);
+		int n = p.length;
+		ops[n] = TEXT;
+		ops[n + 1] = p.textCount;
+		ops[n + 2] = x;
+		ops[n + 3] = y;
+		p.length += 4;
+		p.texts[p.textCount++] = str;
+		// a generous guess at the string's box: no wider than a square per character
+		cover(x, y - fontSize - 2, x + str.length()*fontSize, y + fontSize/2 + 2);
+	}
+
+	/* An image, which must be loaded already (a BufferedImage, say), and
+	 *  which mustn't change once it's been drawn: make a new one instead,
+	 *  since it's only by being another object that it's seen to change.
+	 */
+	public void drawImage(Image image, int x, int y) {
+		Part p = current;
+		if (p.imageCount == p.images.length)
+			p.images = Arrays.copyOf(p.images, 2*p.images.length);
+		int[] ops = grow(4);
+		int n = p.length;
+		ops[n] = IMAGE;
+		ops[n + 1] = p.imageCount;
+		ops[n + 2] = x;
+		ops[n + 3] = y;
+		p.length += 4;
+		p.images[p.imageCount++] = image;
+		cover(x, y, x + image.getWidth(null), y + image.getHeight(null));
+	}
+
+	// make room for count more ints in the current part
+	int[] grow(int count) {
+		Part p = current;
+		if (p.length + count > p.ops.length)
+			p.ops = Arrays.copyOf(p.ops, 2*(p.length + count));
+		return p.ops;
+	}
+
+	// the current part covers the box from (x1, y1) to (x2, y2), plus the pen
+	void cover(int x1, int y1, int x2, int y2) {
+		Part p = current;
+		p.minX = Math.min(p.minX, x1 - 1);
+		p.minY = Math.min(p.minY, y1 - 1);
+		p.maxX = Math.max(p.maxX, x2 + 1);
+		p.maxY = Math.max(p.maxY, y2 + 1);
+	}
+
+	/* Draws the parts that fall in g's clip, building the shapes for any
+	 *  that changed since the last paint.
+	 */
+	public void paint(Graphics g) {
+		Graphics2D g2 = (Graphics2D)g;
+		Font font = g2.getFont();
+		if (!font.equals(glyphFont)) {
+			glyphFont = font;
+			glyphCache.clear();
+			fontSize = font.getSize();
+			for (int i = 0; i < parts.length; i++)
+				parts[i].stale = true;
+		}
+		Rectangle clip = g2.getClipBounds();
+		primitives = 0;
+		for (int i = 0; i < parts.length; i++) {
+			Part p = parts[i];
+			if (p.length == 0)
+				continue;
+			if ((clip != null) && ((p.maxX < clip.x) || (p.maxY < clip.y)
+								   || (p.minX > clip.x + clip.width)
+								   || (p.minY > clip.y + clip.height)))
+				continue;
+			if (p.stale)
+				build(p, g2.getFontRenderContext());
+			// images go under everything else in the part
+			for (int k = 0; k < p.length; k += sizes[p.ops[k]])
+				if (p.ops[k] == IMAGE)
+					g2.drawImage(p.images[p.ops[k + 1]], p.ops[k + 2], p.ops[k + 3], null);
+			g2.draw(p.lines);
+			g2.fill(p.fills);
+			for (int k = 0, n = 0; k < p.length; k += sizes[p.ops[k]]) {
+				if (p.ops[k] == TEXT)
+					g2.drawGlyphVector(p.glyphs[n++], p.ops[k + 2], p.ops[k + 3]);
+				primitives++;
+			}
+		}
+	}
+
+	/* draw what a part recorded straight onto g, with no shapes kept; this
+	 *  is how snapshots are drawn
+	 */
+	static void draw(Graphics g, int[] ops, int length, String[] texts, Image[] images) {
+		for (int k = 0; k < length; k += sizes[ops[k]]) {
+			switch (ops[k]) {
+			case LINE:
+				g.drawLine(ops[k + 1], ops[k + 2], ops[k + 3], ops[k + 4]);
+				break;
+			case ARC:
+				g.drawArc(ops[k + 1], ops[k + 2], ops[k + 3], ops[k + 4], ops[k + 5], ops[k + 6]);
+				break;
+			case RECT:
+				g.fillRect(ops[k + 1], ops[k + 2], ops[k + 3], ops[k + 4]);
+				break;
+			case TEXT:
+				g.drawString(texts[ops[k + 1]], ops[k + 2], ops[k + 3]);
+				break;
+			case IMAGE:
+				g.drawImage(images[ops[k + 1]], ops[k + 2], ops[k + 3], null);
+				break;
+			}
+		}
+	}
+
+	/* Write the picture as SVG elements (just the elements: the caller
+	 *  writes the svg element around them), one primitive at a time, so
+	 *  nothing is built up in memory however big the picture is.  Images
+	 *  are left out.  Arcs become paths, with AWT's angles
+	 *  (counterclockwise, in degrees, from three o'clock) turned into
+	 *  SVG's end points.
+	 */
+	public void writeSVG(Writer out) throws IOException {
+		for (int i = 0; i < parts.length; i++) {
+			Part p = parts[i];
+			int[] ops = p.ops;
+			for (int k = 0; k < p.length; k += sizes[ops[k]]) {
+				switch (ops[k]) {
+				case LINE:
+					out.write("<line x1=\"");
+					out.write(Integer.toString(ops[k + 1]));
+					out.write("\" y1=\"");
+					out.write(Integer.toString(ops[k + 2]));
+					out.write("\" x2=\"");
+					out.write(Integer.toString(ops[k + 3]));
+					out.write("\" y2=\"");
+					out.write(Integer.toString(ops[k + 4]));
+					out.write("\"/>\n");
+					break;
+				case ARC:
+					writeArc(out, ops[k + 1], ops[k + 2], ops[k + 3], ops[k + 4], ops[k + 5], ops[k + 6]);
+					break;
+				case RECT:
+					out.write("<rect class=\"fill\" x=\"");
+					out.write(Integer.toString(ops[k + 1]));
+					out.write("\" y=\"");
+					out.write(Integer.toString(ops[k + 2]));
+					out.write("\" width=\"");
+					out.write(Integer.toString(ops[k + 3]));
+					out.write("\" height=\"");
+					out.write(Integer.toString(ops[k + 4]));
+					out.write("\"/>\n");
+					break;
+				case TEXT:
+					out.write("<text x=\"");
+					out.write(Integer.toString(ops[k + 2]));
+					out.write("\" y=\"");
+					out.write(Integer.toString(ops[k + 3]));
+					out.write("\">");
+					String text = p.texts[ops[k + 1]];
+					for (int c = 0; c < text.length(); c++) {
+						char ch = text.charAt(c);
+						if (ch == '<')
+							out.write("&lt;");
+						else if (ch == '>')
+							out.write("&gt;");
+						else if (ch == '&')
+							out.write("&amp;");
+						else
+							out.write(ch);
+					}
+					out.write("</text>\n");
+					break;
+				}
+			}
+		}
+	}
+
+	static void writeArc(Writer out, int x, int y, int width, int height, int start, int extent)
+		throws IOException {
+		if ((width <= 0) || (height <= 0) || (extent == 0))
+			return; // AWT draws nothing for these either
+		double rx = width/2.0, ry = height/2.0;
+		double cx = x + rx, cy = y + ry;
+		double from = Math.toRadians(start), to = Math.toRadians(start + extent);
+		out.write("<path d=\"M");
+		writeNumber(out, cx + rx*Math.cos(from));
+		out.write(' ');
+		writeNumber(out, cy - ry*Math.sin(from));
+		out.write(" A");
+		writeNumber(out, rx);
+		out.write(' ');
+		writeNumber(out, ry);
+		// large arc?, and counterclockwise on the screen is SVG's negative sweep
+		out.write((Math.abs(extent) > 180) ? " 0 1 " : " 0 0 ");
+		out.write((extent > 0) ? "0 " : "1 ");
+		writeNumber(out, cx + rx*Math.cos(to));
+		out.write(' ');
+		writeNumber(out, cy - ry*Math.sin(to));
+		out.write("\"/>\n");
+	}
+
+	// d, to two places, without going through String.format
+	static void writeNumber(Writer out, double d) throws IOException {
+		long hundredths = Math.round(d*100);
+		if (hundredths < 0) {
+			out.write('-');
+			hundredths = -hundredths;
+		}
+		out.write(Long.toString(hundredths/100));
+		long fraction = hundredths%100;
+		if (fraction != 0) {
+			out.write('.');
+			out.write((char)('0' + fraction/10));
+			if (fraction%10 != 0)
+				out.write((char)('0' + fraction%10));
+		}
+	}
+
+	// turn what part p recorded into shapes and glyphs
+	void build(Part p, FontRenderContext frc) {
+		p.lines.reset();
+		p.fills.reset();
+		if (p.glyphs.length < p.textCount)
+			p.glyphs = new GlyphVector[p.texts.length];
+		p.glyphCount = 0;
+		int[] ops = p.ops;
+		for (int k = 0; k < p.length; k += sizes[ops[k]]) {
+			switch (ops[k]) {
+			case LINE:
+				p.lines.moveTo(ops[k + 1], ops[k + 2]);
+				p.lines.lineTo(ops[k + 3], ops[k + 4]);
+				break;
+			case ARC:
+				p.lines.append(new Arc2D.Float(ops[k + 1], ops[k + 2], ops[k + 3], ops[k + 4],
+											   ops[k + 5], ops[k + 6], Arc2D.OPEN), false);
+				break;
+			case RECT:
+				p.fills.append(new Rectangle(ops[k + 1], ops[k + 2], ops[k + 3], ops[k + 4]), false);
+				break;
+			case TEXT:
+				p.glyphs[p.glyphCount++] = glyphs(p.texts[ops[k + 1]], frc);
+				break;
+			}
+		}
+		p.stale = false;
+	}
+
+	// the glyphs for str, laid out once and then kept
+	GlyphVector glyphs(String str, FontRenderContext frc) {
+		GlyphVector v = glyphCache.get(str);
+		if (v == null) {
+			v = glyphFont.createGlyphVector(frc, str);
+			glyphCache.put(str, v);
+		}
+		return v;
+	}
+}
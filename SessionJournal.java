@@ -0,0 +1,416 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/*
+ * Keeps a session of the demo on disk as it goes, so that closing the
+ *  window (or a crash) doesn't lose it.  Every step the user takes is
+ *  added onto the end of the journal: each click (the alternate-view
+ *  click after 22 included), each step back or forward and each restart.
+ *  And every so often, a checkpoint: the whole state the demo is in.
+ *  Opening the journal again goes back from the end to the last
+ *  checkpoint, puts the demo into that state and replays the few steps
+ *  after it, so it takes the same time however long the journal is.
+ *
+ *  Each step is written as the state it left the demo in, rather than as
+ *  the click or button that took it: what a click does depends on the
+ *  moves before it, and going back or forward on the history, and
+ *  neither of those is kept.  Only what changed is written: the points
+ *  that weren't there before the step, and the few ints of flags and
+ *  places.  So a click takes a couple of dozen bytes.  After a reload,
+ *  Back goes as far back as the last checkpoint.
+ *
+ *  The layout (little-endian) is a header (the magic number "MJRN" and
+ *  the version) and then the records, each
+ *
+ *    length  of the body, a byte
+ *    type    a byte
+ *    body    numbers, seven bits to a byte, zigzagged so small negative
+ *            ones stay short
+ *    check   the CRC-32 of the type and the body, four bytes
+ *    length  again, so the records can be read from the end back
+ *
+ *  Records are written out and forced to the disk from a thread of our
+ *  own a few times a second rather than one at a time, so the mouse
+ *  never waits for the disk.  A crash can lose the last fraction of a
+ *  second, and may leave part of a record at the end; the check finds
+ *  where the last whole record ends, and anything after it is cut off.
+ *  If a write fails, the journal says so and stops there: each record
+ *  is built on the one before, so one lost would have every reload
+ *  after it put the demo in the wrong state.
+ */
+public class SessionJournal implements Closeable, Runnable {
+	final static int MAGIC = 0x4e524a4d; // "MJRN", read little-endian
+	final static int VERSION = 1;
+	final static int HEADER = 8; // bytes
+	final static int MAX_RECORD = 255 + 7; // bytes, the longest body and the rest
+	final static int TAIL = 64*1024; // how far back from the end we look for a whole record
+	final static int CHECKPOINT_EVERY = 64; // records
+	final static long SYNC_MILLIS = 200; // between forcing what's written to the disk
+
+	// the kinds of record
+	final static int CLICK = 1;
+	final static int BACK = 2;
+	final static int FORWARD = 3;
+	final static int RESTART = 4;
+	final static int CHECKPOINT = 5;
+
+	Rhythm controller;
+	FileChannel channel;
+	long position; // where the next records go on the disk
+	ByteBuffer pending = ByteBuffer.allocate(16*1024); // records taken but not written yet
+	ByteBuffer writing = ByteBuffer.allocate(16*1024); // records being written
+	final Object writeLock = new Object(); // held while writing to the channel
+	byte[] record = new byte[MAX_RECORD]; // the record being made
+	int length; // how much of it there is
+	CRC32 crc = new CRC32();
+	EditHistory.State last = null; // the state the last record left the demo in
+	int sinceCheckpoint = 0;
+	long records = 0; // how many we've added
+	volatile boolean running = true;
+	volatile IOException failure = null; // why the journal stopped, if it has
+	Thread syncer;
+
+	SessionJournal(Rhythm controller, FileChannel channel, long position) {
+		this.controller = controller;
+		this.channel = channel;
+		this.position = position;
+	}
+
+	/* Open a journal, or start one if file doesn't exist, and put the demo
+	 *  into the state it ends in.  Everything the controller does from
+	 *  then on is added to it.
+	 */
+	public static SessionJournal open(File file, Rhythm controller) throws IOException {
+		FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+		try {
+			long end;
+			if (channel.size() < HEADER) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(MAGIC).putInt(VERSION).flip();
+				channel.truncate(0);
+				channel.write(header, 0);
+				end = HEADER;
+			} else {
+				ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+				channel.read(header, 0);
+				if ((header.getInt(0) != MAGIC) || (header.getInt(4) != VERSION))
+					throw new IOException("Not a session journal");
+				end = lastEnd(channel);
+				if (end < channel.size())
+					channel.truncate(end); // part of a record that didn't get written
+				recover(channel, end, controller);
+			}
+			SessionJournal journal = new SessionJournal(controller, channel, end);
+			journal.last = controller.history.current;
+			// so the next reload needn't go back any further than this
+			journal.checkpoint();
+			journal.sync();
+			journal.syncer = new Thread(journal, "SessionJournal");
+			journal.syncer.setDaemon(true);
+			journal.syncer.start();
+			controller.journal = journal;
+			return journal;
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	// where the last whole record ends
+	static long lastEnd(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long from = Math.max(HEADER, size - TAIL);
+		byte[] tail = read(channel, from, size);
+		for (int end = tail.length; end > 0; end--)
+			if (start(tail, end) >= 0)
+				return from + end;
+		return HEADER;
+	}
+
+	// the bytes of the channel from from to to
+	static byte[] read(FileChannel channel, long from, long to) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int)(to - from));
+		while (buffer.hasRemaining())
+			if (channel.read(buffer, from + buffer.position()) < 0)
+				throw new EOFException("The journal is shorter than it was");
+		return buffer.array();
+	}
+
+	// where the whole record ending at end in bytes starts, or -1 if there isn't one
+	static int start(byte[] bytes, int end) {
+		int length = bytes[end - 1] & 0xff;
+		int start = end - length - 7;
+		if ((start < 0) || ((bytes[start] & 0xff) != length))
+			return -1;
+		CRC32 crc = new CRC32();
+		crc.update(bytes, start + 1, length + 1);
+		int at = start + 2 + length;
+		int check = (bytes[at] & 0xff) | ((bytes[at + 1] & 0xff) << 8)
+			| ((bytes[at + 2] & 0xff) << 16) | ((bytes[at + 3] & 0xff) << 24);
+		return (check == (int)crc.getValue()) ? start : -1;
+	}
+
+	/* Go back from end to the last checkpoint, then forward again from
+	 *  there, putting the demo into each state in turn.
+	 */
+	static void recover(FileChannel channel, long end, Rhythm controller) throws IOException {
+		byte[][] steps = new byte[CHECKPOINT_EVERY + 1][];
+		int count = 0;
+		long at = end;
+		while (at > HEADER) {
+			long from = Math.max(HEADER, at - MAX_RECORD);
+			byte[] bytes = read(channel, from, at);
+			int start = start(bytes, bytes.length);
+			if (start < 0)
+				break; // damaged: replay what comes after it
+			byte[] step = new byte[bytes.length - start - 6];
+			System.arraycopy(bytes, start + 1, step, 0, step.length); // the type and the body
+			if (count == steps.length) {
+				byte[][] more = new byte[2*count][];
+				System.arraycopy(steps, 0, more, 0, count);
+				steps = more;
+			}
+			steps[count++] = step;
+			at = from + start;
+			if (step[0] == CHECKPOINT)
+				break;
+		}
+		for (int i = count - 1; i >= 0; i--) {
+			EditHistory.State state = new Reader(steps[i]).state(controller.history.current);
+			if ((steps[i][0] == CHECKPOINT) && (i == count - 1))
+				controller.history.begin(state);
+			else
+				controller.history.enter(state);
+		}
+	}
+
+	// reads the numbers of a body back
+	static class Reader {
+		byte[] bytes;
+		int at = 1; // after the type
+
+		Reader(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		int next() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[at++];
+				value |= (b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		// the state a step went to from previous
+		EditHistory.State state(EditHistory.State previous) {
+			int kept = next();
+			int count = next();
+			EditHistory.Points points = previous.points;
+			while ((points != null) && (points.count > kept))
+				points = points.earlier;
+			for (int i = 0; i < count; i++) {
+				int x = next();
+				points = new EditHistory.Points(x, next(), points);
+			}
+			int flags = next();
+			int x1 = next();
+			int arcX = next();
+			int arcY = next();
+			return new EditHistory.State(null, -1, points, flags, x1, arcX, arcY, next());
+		}
+	}
+
+	void begin(int type) {
+		length = 2;
+		record[1] = (byte)type;
+	}
+
+	void put(int value) {
+		value = (value << 1) ^ (value >> 31);
+		while ((value & ~0x7f) != 0) {
+			record[length++] = (byte)(value | 0x80);
+			value >>>= 7;
+		}
+		record[length++] = (byte)value;
+	}
+
+	/* A state, as what changed since last: how many of its points it
+	 *  kept, and the new ones, oldest first.  A checkpoint keeps none.
+	 */
+	void put(EditHistory.State state, boolean whole) {
+		int count = (state.points == null) ? 0 : state.points.count;
+		int kept = 0;
+		if (!whole)
+			while ((kept < count) && (kept <= last.getWherein())
+				   && (point(state, kept).x == point(last, kept).x)
+				   && (point(state, kept).y == point(last, kept).y))
+				kept++;
+		put(kept);
+		put(count - kept);
+		for (int i = kept; i < count; i++) {
+			put(point(state, i).x);
+			put(point(state, i).y);
+		}
+		put(state.flags);
+		put(state.x1);
+		put(state.arcX);
+		put(state.arcY);
+		put(state.message);
+		last = state;
+	}
+
+	// the i-th point of a state
+	static EditHistory.Points point(EditHistory.State state, int i) {
+		EditHistory.Points p = state.points;
+		while (p.count > i + 1)
+			p = p.earlier;
+		return p;
+	}
+
+	// finish the record and queue it for writing
+	void end() {
+		int body = length - 2;
+		record[0] = (byte)body;
+		crc.reset();
+		crc.update(record, 1, body + 1);
+		int check = (int)crc.getValue();
+		record[length++] = (byte)check;
+		record[length++] = (byte)(check >>> 8);
+		record[length++] = (byte)(check >>> 16);
+		record[length++] = (byte)(check >>> 24);
+		record[length++] = (byte)body;
+		if (failure != null)
+			return;
+		boolean full;
+		synchronized (this) {
+			full = pending.remaining() < length;
+		}
+		if (full)
+			sync(); // the disk's fallen behind: catch it up
+		synchronized (this) {
+			pending.put(record, 0, length);
+		}
+		records++;
+		if ((++sinceCheckpoint >= CHECKPOINT_EVERY) && (record[1] != CHECKPOINT))
+			checkpoint();
+	}
+
+	void checkpoint() {
+		sinceCheckpoint = 0;
+		begin(CHECKPOINT);
+		put(controller.history.current, true);
+		end();
+	}
+
+	// a step of the given type just taken
+	void step(int type) {
+		begin(type);
+		put(controller.history.current, false);
+		end();
+	}
+
+	// a click the demo handled, which changed something
+	public void click() {
+		step(CLICK);
+	}
+
+	public void back() {
+		step(BACK);
+	}
+
+	public void forward() {
+		step(FORWARD);
+	}
+
+	public void restart() {
+		step(RESTART);
+	}
+
+	// write out everything taken so far, and make sure it's on the disk
+	public void sync() {
+		synchronized (writeLock) {
+			synchronized (this) {
+				ByteBuffer taken = pending;
+				pending = writing;
+				writing = taken;
+			}
+			writing.flip();
+			if (!writing.hasRemaining() || (failure != null)) {
+				writing.clear();
+				return;
+			}
+			try {
+				while (writing.hasRemaining())
+					position += channel.write(writing, position);
+				channel.force(false);
+			} catch (IOException e) {
+				failure = e;
+				System.err.println("Couldn't write the journal, so it stops here: " + e.getMessage());
+			}
+			writing.clear();
+		}
+	}
+
+	public void run() {
+		// close() wakes us with unpark, never with an interrupt: an
+		//  interrupt during force() would close the channel under us
+		while (running) {
+			LockSupport.parkNanos(this, SYNC_MILLIS*1000000L);
+			sync();
+		}
+	}
+
+	public void close() throws IOException {
+		boolean interrupted = false;
+		running = false;
+		if (syncer != null) {
+			LockSupport.unpark(syncer);
+			while (syncer.isAlive()) {
+				try {
+					syncer.join();
+				} catch (InterruptedException e) {
+					interrupted = true; // passed on once the channel is closed
+				}
+			}
+		}
+		sync();
+		channel.close();
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+
+	public long getRecords() {
+		return records;
+	}
+
+	// how long the journal is, in bytes, once everything's written
+	public long getLength() {
+		synchronized (writeLock) {
+			synchronized (this) {
+				return position + pending.position();
+			}
+		}
+	}
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Receives the sounds of a performance, one at a time and in order: each
+ *  begins at onset and ends at offset, and the next one begins after it
+ *  ends.  This is how performances read from files get to the
+ *  projection rules.
+ */
+public interface SoundListener {
+	void sound(long onset, long offset);
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.awt.event.*;
+import javax.swing.Timer;
+
+/*
+ * Performs the sounds from the keyboard instead of the mouse: pressing
+ *  any key begins a sound and letting it go ends it.  Each press and
+ *  release is timed with System.nanoTime as soon as it reaches us, and
+ *  the projection rules go by those times, with a tolerance for what
+ *  counts as exactly on time; the times only become x coordinates for
+ *  the drawing.  While a sound (or a silence) goes on, a timer moves the
+ *  diagram along with the clock, the way moving the mouse does.
+ *
+ *  We also keep track of how long each key event took to reach us after
+ *  the system stamped it, and of how much that varies: the jitter in the
+ *  times we measure.
+ */
+public class TapInput extends KeyAdapter implements ActionListener {
+	final static int Y = 50; // where the sounds are drawn
+
+	Rhythm controller;
+	CoordinateArea area;
+	long limit; // the limit of mensural determinacy, in nanoseconds
+	long[] times = new long[6]; // the time of each event, from the first
+	long origin = -1; // when the first sound began, or -1 if it hasn't
+	boolean held = false; // is a key down?
+	Timer timer;
+
+	// how late the key events are, against the time the system gave them
+	long delays = 0; // how many we've measured
+	long firstDelay = 0; // the first one, which the others are measured from
+	double delaySum = 0; // the sum of the others' differences from it
+	double delaySquares = 0; // and of their squares
+	long minDelay = Long.MAX_VALUE;
+	long maxDelay = Long.MIN_VALUE;
+	long clockBase; // nanoTime + clockBase is (near enough) currentTimeMillis in nanoseconds
+
+	public TapInput(Rhythm controller, CoordinateArea area, double limitSeconds,
+					double toleranceMillis) {
+		if (null == controller) {
+			throw new IllegalArgumentException("The TapInput class was passed a null Rhythm object");
+		}
+		if (null == area) {
+			throw new IllegalArgumentException("The TapInput class was passed a null CoordinateArea object");
+		}
+
+		this.controller = controller;
+		this.area = area;
+		limit = Math.round(limitSeconds*1000000000);
+		area.setTimes(times, limit, Math.round(toleranceMillis*1000000));
+		clockBase = System.currentTimeMillis()*1000000 - System.nanoTime();
+		int delay = (int)Math.max(1, ActiveRenderer.framePeriod(area)/1000000L);
+		timer = new Timer(delay, this);
+		timer.setCoalesce(true);
+	}
+
+	public void start() {
+		area.setFocusable(true);
+		area.addKeyListener(this);
+		area.requestFocus();
+		timer.start();
+	}
+
+	public void stop() {
+		timer.stop();
+		area.removeKeyListener(this);
+	}
+
+	// where time (from the first event) goes in the drawing
+	int toX(long time) {
+		return (int)(time*CoordinateArea.unitLength/limit);
+	}
+
+	public void keyPressed(KeyEvent event) {
+		long now = System.nanoTime();
+		if (event.getKeyCode() == PerformanceHud.TOGGLE_KEY)
+			return; // that's for the HUD
+		if (held)
+			return; // the key repeating
+		held = true;
+		measure(now, event.getWhen());
+		tap(now, true);
+	}
+
+	public void keyReleased(KeyEvent event) {
+		long now = System.nanoTime();
+		if ((event.getKeyCode() == PerformanceHud.TOGGLE_KEY) || !held)
+			return;
+		held = false;
+		measure(now, event.getWhen());
+		tap(now, false);
+	}
+
+	// one event, at now
+	void tap(long now, boolean pressed) {
+		if (area.done) {
+			// only a press can switch to the other view; otherwise we're finished
+			if (area.clickToChange && pressed)
+				area.handleMouseDown(toX(now - origin), Y);
+			return;
+		}
+		int i = controller.getWherein() + 1;
+		if (i == 0)
+			origin = now;
+		times[i] = now - origin;
+		int x = toX(times[i]);
+		// two events can't share a pixel, however close together they were
+		if ((i > 0) && (x <= controller.getPoint(i - 1).x))
+			x = controller.getPoint(i - 1).x + 1;
+		area.handleMouseDown(x, Y);
+	}
+
+	// the diagram follows the clock
+	public void actionPerformed(ActionEvent event) {
+		if ((origin >= 0) && (controller.getWherein() >= 0) && !area.done)
+			area.handleMouseMove(toX(System.nanoTime() - origin), Y);
+	}
+
+	void measure(long now, long when) {
+		long delay = now + clockBase - when*1000000;
+		if (delays == 0)
+			firstDelay = delay;
+		double d = delay - firstDelay;
+		delaySum += d;
+		delaySquares += d*d;
+		minDelay = Math.min(minDelay, delay);
+		maxDelay = Math.max(maxDelay, delay);
+		delays++;
+	}
+
+	/* The jitter: the standard deviation and range of the delays, in
+	 *  microseconds.  The system stamps key events to the millisecond, so
+	 *  about 0.3ms of the deviation is that rounding alone.
+	 */
+	public double getJitter() {
+		if (delays < 2)
+			return 0;
+		double mean = delaySum/delays;
+		return Math.sqrt(Math.max(0, delaySquares/delays - mean*mean))/1000;
+	}
+
+	public String toString() {
+		if (delays == 0)
+			return "TapInput: no key events";
+		return "TapInput: " + delays + " key events, jitter " + Math.round(getJitter())
+			+ "us (range " + ((maxDelay - minDelay)/1000) + "us)";
+	}
+}
@@ -0,0 +1,459 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.concurrent.*;
+
+/*
+ * The demo's diagram, drawn along a whole performance instead of three
+ *  sounds, in a window you can pan (drag, or the arrow keys) and zoom (the
+ *  wheel, or + and -; Home shows everything).  Only what's in the window
+ *  is drawn, found through a TimelineIndex, so painting takes as long for
+ *  a performance of a hundred thousand sounds as for one of a hundred.
+ *  Zoomed out so far that things would pile up on each pixel, it draws
+ *  how many of each kind of outcome fall in each column instead.
+ *
+ *  With -levels, each level of a ProjectionHierarchy gets a row of its
+ *  own, one under the other, the beginnings of the larger durations
+ *  below the smaller ones they group.
+ *
+ *  Usage: java Timeline [-limit seconds] [-levels] [-bench] file [piece]
+ *
+ *  where file is a MIDI file, a text file of onsets or a corpus (and
+ *  piece which of its pieces; the first by default).
+ */
+@SuppressWarnings("serial")
+public class Timeline extends Canvas {
+	final static int ROW1 = 55, ROW2 = 80; // where the two rows of arcs go, as in the demo
+	final static int TICK_SPACING = 60; // the fewest pixels between labelled ticks
+	final static int BAR_TOP = 55, BAR_HEIGHT = 50; // where the counts go when zoomed out
+	final static int LEVEL_HEIGHT = 100; // how far apart the levels are, when there are several
+	// the colors of Projection's kinds, when zoomed out
+	final static Color[] kindColors = { Color.black, Color.darkGray, Color.black,
+										Color.red, Color.blue, Color.lightGray };
+	final static String[] kindNames = { "sounds", "projected", "realized",
+										"denied", "hiatus", "indeterminate" };
+
+	TimelineIndex[] indexes; // a level each
+	TimelineIndex index; // the first, which has everything in it
+	double left; // the time at the left edge
+	double scale; // time per pixel
+	Image back = null; // what we draw into before it goes on the screen
+	int dragX; // where the last drag event was
+	int drawn = 0; // how many things the last paint drew
+	long paintNanos = 0; // ... and how long it took
+	boolean summarized = false; // did it draw counts instead?
+	int[] counts = new int[TimelineIndex.KINDS]; // for one column, when it does
+
+	public Timeline(TimelineIndex index) {
+		this(new TimelineIndex[] { index });
+	}
+
+	// a row for each of indexes, the first at the top
+	public Timeline(TimelineIndex[] indexes) {
+		if ((null == indexes) || (indexes.length == 0) || (null == indexes[0])) {
+			throw new IllegalArgumentException("The Timeline class was passed a null TimelineIndex object");
+		}
+
+		this.indexes = indexes;
+		this.index = indexes[0];
+		setBackground(Color.white);
+		setForeground(Color.black);
+		setPreferredSize(new Dimension(800, 200 + (indexes.length - 1)*LEVEL_HEIGHT));
+		left = index.getStart();
+		scale = index.getLimit()/200.0; // the demo's scale, more or less
+
+		MouseAdapter mouse = new MouseAdapter() {
+				public void mousePressed(MouseEvent e) {
+					dragX = e.getX();
+				}
+				public void mouseDragged(MouseEvent e) {
+					pan(dragX - e.getX());
+					dragX = e.getX();
+				}
+				public void mouseWheelMoved(MouseWheelEvent e) {
+					zoom(Math.pow(1.25, e.getPreciseWheelRotation()), e.getX());
+				}
+			};
+		addMouseListener(mouse);
+		addMouseMotionListener(mouse);
+		addMouseWheelListener(mouse);
+		addKeyListener(new KeyAdapter() {
+				public void keyPressed(KeyEvent e) {
+					switch (e.getKeyCode()) {
+					case KeyEvent.VK_LEFT:
+						pan(-getWidth()/4);
+						break;
+					case KeyEvent.VK_RIGHT:
+						pan(getWidth()/4);
+						break;
+					case KeyEvent.VK_PLUS: case KeyEvent.VK_EQUALS: case KeyEvent.VK_ADD:
+						zoom(0.5, getWidth()/2);
+						break;
+					case KeyEvent.VK_MINUS: case KeyEvent.VK_SUBTRACT:
+						zoom(2, getWidth()/2);
+						break;
+					case KeyEvent.VK_HOME:
+						showAll(getWidth());
+						break;
+					}
+				}
+			});
+	}
+
+	// move the window by pixels
+	void pan(int pixels) {
+		left += pixels*scale;
+		repaint();
+	}
+
+	// zoom by factor (more than 1 is out), keeping the time at pixel x still
+	void zoom(double factor, int x) {
+		double at = left + x*scale;
+		double widest = Math.max(1, index.getEnd() - index.getStart())/Math.max(1.0, getWidth());
+		scale = Math.max(index.getLimit()/2000.0, Math.min(2*widest, scale*factor));
+		left = at - x*scale;
+		repaint();
+	}
+
+	// fit the whole performance into width pixels
+	void showAll(int width) {
+		left = index.getStart();
+		scale = Math.max(1, index.getEnd() - index.getStart())/(double)Math.max(1, width - 10);
+		repaint();
+	}
+
+	int toX(long time) {
+		double x = (time - left)/scale;
+		// far off screen is as good as anywhere else off screen
+		return (int)Math.max(-100000, Math.min(100000, x));
+	}
+
+	// we draw over everything anyway, so don't clear first
+	public void update(Graphics g) {
+		paint(g);
+	}
+
+	public void paint(Graphics g) {
+		int width = getWidth(), height = getHeight();
+		if ((back == null) || (back.getWidth(null) != width) || (back.getHeight(null) != height))
+			back = createImage(Math.max(1, width), Math.max(1, height));
+		Graphics bg = back.getGraphics();
+		try {
+			render(bg, width, height);
+		} finally {
+			bg.dispose();
+		}
+		g.drawImage(back, 0, 0, null);
+	}
+
+	/* Draw what's between left and left + width*scale into g, which is
+	 *  width by height.  This is all paint does, so it can be timed
+	 *  without a screen.
+	 */
+	public void render(Graphics g, int width, int height) {
+		long start = System.nanoTime();
+		g.setColor(getBackground());
+		g.fillRect(0, 0, width, height);
+		g.setColor(getForeground());
+
+		drawNumberLine(g, width);
+		drawn = 0;
+		summarized = false;
+		for (int l = 0; l < indexes.length; l++) {
+			g.translate(0, l*LEVEL_HEIGHT);
+			drawLevel(g, indexes[l], width);
+			if (indexes.length > 1) {
+				g.setColor(Color.gray);
+				g.drawString("level " + l, 5, 36);
+				g.setColor(getForeground());
+			}
+			g.translate(0, -l*LEVEL_HEIGHT);
+		}
+		if (summarized)
+			drawLegend(g, height);
+		paintNanos = System.nanoTime() - start;
+		drawStatus(g, height);
+	}
+
+	// one level, with its arcs under its number line at 50
+	void drawLevel(Graphics g, TimelineIndex index, int width) {
+		long from = (long)Math.floor(left), to = (long)Math.ceil(left + width*scale);
+		TimelineIndex.Sequence sounds = index.sounds, marks = index.marks;
+		int firstSound = sounds.first(from), lastSound = sounds.last(to);
+		int firstMark = marks.first(from), lastMark = marks.last(to);
+		int longSounds = sounds.findLong(from, to, firstSound, lastSound);
+		int longMarks = marks.findLong(from, to, firstMark, lastMark);
+		// more than a thing for every couple of pixels is too many to see
+		if ((lastSound - firstSound) + (lastMark - firstMark) + longSounds + longMarks > width/2) {
+			summarized = true;
+			drawn += drawCounts(g, index, width);
+			return;
+		}
+		for (int i = firstSound; i < lastSound; i++)
+			drawSound(g, sounds, i);
+		for (int k = 0; k < longSounds; k++)
+			drawSound(g, sounds, sounds.found[k]);
+		for (int i = firstMark; i < lastMark; i++)
+			drawMark(g, marks, i);
+		for (int k = 0; k < longMarks; k++)
+			drawMark(g, marks, marks.found[k]);
+		drawn += (lastSound - firstSound) + (lastMark - firstMark) + longSounds + longMarks;
+	}
+
+	// the number line, with a labelled tick at every so many limits
+	void drawNumberLine(Graphics g, int width) {
+		long limit = index.getLimit();
+		// ticks a power of two limits (or fractions of one) apart
+		double step = limit;
+		while (step/scale < TICK_SPACING)
+			step *= 2;
+		while ((step/2)/scale >= TICK_SPACING)
+			step /= 2;
+		g.drawLine(0, 10, width, 10);
+		double first = Math.floor((left - index.getStart())/step)*step + index.getStart();
+		for (double t = first; t <= left + width*scale; t += step) {
+			int x = (int)Math.round((t - left)/scale);
+			g.drawLine(x, 5, x, 15);
+			int minor = (int)Math.round((t + step/2 - left)/scale);
+			g.drawLine(minor, 8, minor, 12);
+			double lims = (t - index.getStart())/limit;
+			String label = (lims == Math.rint(lims)) ? ((long)lims + " Lim")
+				: (Math.round(lims*1000)/1000.0 + " Lim");
+			g.drawString(label, x - 10, 25);
+		}
+	}
+
+	// the i-th sound, as a line, the way the demo draws them
+	void drawSound(Graphics g, TimelineIndex.Sequence sounds, int i) {
+		int on = toX(sounds.as[i]), off = toX(sounds.bs[i]);
+		g.fillRect(on - 1, 50, 2, 2);
+		g.fillRect(off - 1, 50, 2, 2);
+		g.drawLine(on, 50, off, 50);
+	}
+
+	// the i-th mark
+	void drawMark(Graphics g, TimelineIndex.Sequence marks, int i) {
+		int a = toX(marks.as[i]), b = toX(marks.bs[i]);
+		int y = (marks.rows[i] == 0) ? ROW1 : ROW2;
+		switch (marks.types[i]) {
+		case TimelineIndex.PROJECTION:
+			// from a to the middle, then projected on as far again
+			int middle = (a + b)/2;
+			g.drawArc(a, y, middle - a, 15, 0, -180);
+			g.drawLine(middle, y, middle - 5, y + 5);
+			g.drawLine(middle, y, middle + 5, y + 5);
+			g.drawLine(middle - 5, y + 5, middle + 5, y + 5);
+			for (int j = 0; j < 17; j += 2)
+				g.drawArc(middle, y, b - middle, 15, -(j*10), 10);
+			break;
+		case TimelineIndex.CROSS:
+			g.drawLine(a - 10, y + 10, a + 10, y + 20);
+			g.drawLine(a - 10, y + 20, a + 10, y + 10);
+			break;
+		case TimelineIndex.ACCEL:
+			g.drawString("accel.", a - 20, 110);
+			break;
+		case TimelineIndex.RALL:
+			g.drawString("rall.", a - 20, 110);
+			break;
+		case TimelineIndex.PARENTH:
+			g.drawString("(", a, y + 5);
+			g.drawString(")", a + 8, y + 5);
+			break;
+		case TimelineIndex.TRACKS:
+			g.drawLine(a - 5, 45, a - 5, 55);
+			g.drawLine(a - 8, 45, a - 8, 55);
+			break;
+		case TimelineIndex.ARROW:
+			g.drawArc(a, 60, 30, 15, -90, -90);
+			g.drawLine(a + 10, 70, a + 15, 75);
+			g.drawLine(a + 10, 80, a + 15, 75);
+			break;
+		}
+	}
+
+	/* Zoomed out: a column for each pixel, with the sounds in it as a bar
+	 *  up from the line and its outcomes stacked below, both on a log scale
+	 *  against the fullest bucket.  Each column costs a bucket or two,
+	 *  however many things are in it.
+	 */
+	int drawCounts(Graphics g, TimelineIndex index, int width) {
+		int level = index.level(scale);
+		double most = Math.log1p(Math.max(1, index.levelMax[level]));
+		int columns = 0;
+		for (int x = 0; x < width; x++) {
+			long from = (long)Math.floor(left + x*scale), to = (long)Math.floor(left + (x + 1)*scale);
+			int total = 0;
+			for (int k = 0; k < TimelineIndex.KINDS; k++) {
+				counts[k] = index.count(level, k, from, to);
+				if (k != TimelineIndex.SOUNDS)
+					total += counts[k];
+			}
+			if (counts[TimelineIndex.SOUNDS] > 0) {
+				g.setColor(kindColors[TimelineIndex.SOUNDS]);
+				int h = 1 + (int)(11*Math.log1p(counts[TimelineIndex.SOUNDS])/most);
+				g.drawLine(x, 51 - h, x, 50);
+			}
+			if (total > 0) {
+				// the whole bar is as tall as the log of the total, split by kind
+				int h = 1 + (int)(BAR_HEIGHT*Math.log1p(total)/most);
+				int y = BAR_TOP;
+				for (int k = 1; k < TimelineIndex.KINDS; k++) {
+					if (counts[k] == 0)
+						continue;
+					int part = Math.max(1, h*counts[k]/total);
+					g.setColor(kindColors[k]);
+					g.drawLine(x, y, x, y + part - 1);
+					y += part;
+				}
+			}
+			columns++;
+		}
+		g.setColor(getForeground());
+		return columns;
+	}
+
+	// what the colors of the counts mean
+	void drawLegend(Graphics g, int height) {
+		int x = 5;
+		FontMetrics metrics = g.getFontMetrics();
+		for (int k = 1; k < TimelineIndex.KINDS; k++) {
+			g.setColor(kindColors[k]);
+			g.fillRect(x, height - 30, 8, 8);
+			g.drawString(kindNames[k], x + 12, height - 22);
+			x += 20 + metrics.stringWidth(kindNames[k]);
+		}
+		g.setColor(getForeground());
+	}
+
+	void drawStatus(Graphics g, int height) {
+		g.setColor(Color.gray);
+		g.drawString(index.getSoundCount() + " sounds, " + index.getMarkCount() + " marks; drew "
+					 + drawn + (summarized ? " columns" : " things") + " in "
+					 + (paintNanos/1000) + "us; 1 pixel = "
+					 + (Math.round(1000*scale/index.getLimit())/1000.0) + " Lim",
+					 5, height - 5);
+		g.setColor(getForeground());
+	}
+
+	// read a performance from a MIDI file, an onset file or a corpus
+	public static TimelineIndex load(File file, int piece, double limitSeconds) throws Exception {
+		TimelineIndex index = new TimelineIndex(Projection.unitLength);
+		String name = file.getName().toLowerCase();
+		if (name.endsWith(".onc")) {
+			OnsetCorpus corpus = OnsetCorpus.open(file);
+			try {
+				corpus.read(piece, index);
+			} finally {
+				corpus.close();
+			}
+		} else if (name.endsWith(".mid") || name.endsWith(".midi"))
+			new MidiSource(file, limitSeconds).read(index);
+		else
+			OnsetReader.read(file, index);
+		index.finish();
+		return index;
+	}
+
+	/* Time render for windows of a few widths at the beginning, middle and
+	 *  end of the performance, without a screen.
+	 */
+	static void bench(TimelineIndex[] indexes) {
+		TimelineIndex index = indexes[0];
+		int width = 1000, height = 200 + (indexes.length - 1)*LEVEL_HEIGHT;
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Timeline timeline = new Timeline(indexes);
+		double[] widths = { 0.01, 0.1, 1, 10, 100 }; // limits per pixel
+		double full = Math.max(1, index.getEnd() - index.getStart())/(double)width;
+		System.out.println(index.getSoundCount() + " sounds, " + index.getMarkCount() + " marks");
+		for (int w = 0; w <= widths.length; w++) {
+			timeline.scale = (w < widths.length) ? widths[w]*index.getLimit() : full;
+			for (int p = 0; p < 3; p++) {
+				double span = Math.max(0, index.getEnd() - index.getStart() - width*timeline.scale);
+				timeline.left = index.getStart() + span*p/2;
+				Graphics g = image.getGraphics();
+				for (int i = 0; i < 50; i++) // warm up
+					timeline.render(g, width, height);
+				long start = System.nanoTime();
+				int repeats = 200;
+				for (int i = 0; i < repeats; i++)
+					timeline.render(g, width, height);
+				long each = (System.nanoTime() - start)/repeats;
+				g.dispose();
+				System.out.println(((w < widths.length) ? (widths[w] + " Lim/pixel") : "everything")
+								   + " at " + (new String[] { "beginning", "middle", "end" })[p]
+								   + ": " + (each/1000) + "us, drew " + timeline.drawn
+								   + (timeline.summarized ? " columns" : " things"));
+			}
+		}
+	}
+
+	public static void main(String argv[]) throws Exception {
+		double limit = MidiSource.defaultLimitSeconds;
+		boolean bench = false;
+		boolean levels = false;
+		String file = null;
+		int piece = 0;
+		for (int i = 0; i < argv.length; i++) {
+			if (argv[i].equals("-limit") && (i + 1 < argv.length))
+				limit = Double.parseDouble(argv[++i]);
+			else if (argv[i].equals("-bench"))
+				bench = true;
+			else if (argv[i].equals("-levels"))
+				levels = true;
+			else if (file == null)
+				file = argv[i];
+			else
+				piece = Integer.parseInt(argv[i]);
+		}
+		if (file == null) {
+			System.err.println("Usage: java Timeline [-limit seconds] [-levels] [-bench] file [piece]");
+			System.exit(1);
+		}
+
+		TimelineIndex[] indexes;
+		if (levels) {
+			ProjectionHierarchy hierarchy = ProjectionHierarchy.load(new File(file), piece, limit);
+			hierarchy.build(ForkJoinPool.commonPool());
+			indexes = new TimelineIndex[Math.max(1, hierarchy.getLevelCount())];
+			for (int l = 0; l < hierarchy.getLevelCount(); l++)
+				indexes[l] = TimelineIndex.of(hierarchy.getLevel(l), hierarchy.getLimit());
+			if (hierarchy.getLevelCount() == 0)
+				indexes[0] = load(new File(file), piece, limit);
+		} else
+			indexes = new TimelineIndex[] { load(new File(file), piece, limit) };
+		if (bench) {
+			bench(indexes);
+			return;
+		}
+
+		Frame frame = new Frame("Timeline: " + file);
+		frame.addWindowListener(new WindowAdapter() {
+				public void windowClosing(WindowEvent event) {
+					System.exit(0);
+				}
+			});
+		Timeline timeline = new Timeline(indexes);
+		frame.add(timeline);
+		frame.pack();
+		frame.setVisible(true);
+		timeline.requestFocus();
+	}
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.*;
+
+/*
+ * Everything the Timeline needs to draw a whole performance, however long,
+ *  arranged so that finding what falls in a window of time takes a binary
+ *  search and then only the things in (or just around) it.
+ *
+ *  The sounds and the marks (the arcs, arrows, X's and so on that the
+ *  outcomes of the projection rules call for) are kept in the order they
+ *  come, each with an anchor time that never goes down.  Almost nothing
+ *  reaches further than a few limits before or after its anchor (a
+ *  projection can't outlast a few times the limit), so whatever of those
+ *  is visible in [from, to] has its anchor in [from - forward reach,
+ *  to + back reach], and that's a binary search.  The few things that
+ *  reach further, like a sound held for ever, are listed apart and
+ *  looked for separately, so they don't widen every window.
+ *
+ *  For windows too wide to draw each thing, there are counts of each
+ *  kind of outcome (and of the sounds) in buckets of time, with each level
+ *  having buckets twice the width of the one below: a column of pixels
+ *  then costs a couple of buckets, whatever is in them.
+ */
+public class TimelineIndex implements SoundListener, ProjectionStream.Listener {
+	// the kinds of mark
+	final static byte PROJECTION = 0; // from a to b, with the projected (dashed) arc after it
+	final static byte CROSS = 1; // an X through a projected arc, centered at a
+	final static byte ACCEL = 2; // "accel." at a
+	final static byte RALL = 3; // "rall." at a
+	final static byte PARENTH = 4; // a hypothetical beginning at a
+	final static byte TRACKS = 5; // the railroad tracks of a hiatus at a
+	final static byte ARROW = 6; // the arrow of a new beginning after a hiatus, at a
+
+	// the kinds counted for the summaries: the sounds, then Projection's kinds
+	final static int SOUNDS = 0;
+	final static int KINDS = 6;
+	final static int BUCKETS_PER_LIMIT = 16; // the width of the finest buckets
+	final static int REACH_LIMITS = 4; // things reaching further than this from their anchors are long
+
+	/* Things in the order they come, each with an anchor that never goes
+	 *  down and a range of time it covers within back and forward reach of
+	 *  the anchor.
+	 */
+	static class Sequence {
+		long[] anchors = new long[1024];
+		long[] as = new long[1024]; // where each thing starts
+		long[] bs = new long[1024]; // ... and where it ends
+		byte[] types = new byte[1024];
+		byte[] rows = new byte[1024]; // which row of arcs it goes in
+		int count = 0;
+		long reach; // how far a thing may reach from its anchor without being long
+		long backReach = 0, forwardReach = 0; // how far the things that aren't long do
+		int[] longs = new int[16]; // the things that are long, in order
+		long[] longHighs = new long[16]; // the furthest any of longs[0..k] reaches forward
+		int longCount = 0;
+		long longBackReach = 0; // how far back of its anchor any long thing reaches
+		int[] found = new int[16]; // the long things the last call to findLong found
+
+		Sequence(long reach) {
+			this.reach = reach;
+		}
+
+		void add(long a, long b, byte type, byte row) {
+			if (count == anchors.length) {
+				anchors = Arrays.copyOf(anchors, 2*count);
+				as = Arrays.copyOf(as, 2*count);
+				bs = Arrays.copyOf(bs, 2*count);
+				types = Arrays.copyOf(types, 2*count);
+				rows = Arrays.copyOf(rows, 2*count);
+			}
+			long lo = Math.min(a, b), hi = Math.max(a, b);
+			long anchor = (count == 0) ? lo : Math.max(anchors[count - 1], lo);
+			anchors[count] = anchor;
+			as[count] = a;
+			bs[count] = b;
+			types[count] = type;
+			rows[count] = row;
+			if ((anchor - lo > reach) || (hi - anchor > reach)) {
+				if (longCount == longs.length) {
+					longs = Arrays.copyOf(longs, 2*longCount);
+					longHighs = Arrays.copyOf(longHighs, 2*longCount);
+				}
+				longs[longCount] = count;
+				longHighs[longCount] = (longCount == 0) ? hi : Math.max(longHighs[longCount - 1], hi);
+				longCount++;
+				longBackReach = Math.max(longBackReach, anchor - lo);
+			} else {
+				backReach = Math.max(backReach, anchor - lo);
+				forwardReach = Math.max(forwardReach, hi - anchor);
+			}
+			count++;
+		}
+
+		/* The long things that are visible in [from, to], other than those
+		 *  in [first, last), which were found already; they go into found,
+		 *  and how many there are comes back.
+		 */
+		int findLong(long from, long to, int first, int last) {
+			// the first that might reach as far as from
+			int lo = 0, hi = longCount;
+			while (lo < hi) {
+				int middle = (lo + hi) >>> 1;
+				if (longHighs[middle] < from)
+					lo = middle + 1;
+				else
+					hi = middle;
+			}
+			int n = 0;
+			for (int k = lo; (k < longCount) && (anchors[longs[k]] <= to + longBackReach); k++) {
+				int i = longs[k];
+				if ((i >= first) && (i < last))
+					continue;
+				if ((Math.min(as[i], bs[i]) > to) || (Math.max(as[i], bs[i]) < from))
+					continue;
+				if (n == found.length)
+					found = Arrays.copyOf(found, 2*n);
+				found[n++] = i;
+			}
+			return n;
+		}
+
+		// the first thing that might reach as far as from
+		int first(long from) {
+			return search(from - forwardReach);
+		}
+
+		// one past the last thing that might reach back as far as to
+		int last(long to) {
+			return search(to + backReach + 1);
+		}
+
+		// the first index whose anchor is at least time
+		int search(long time) {
+			int lo = 0, hi = count;
+			while (lo < hi) {
+				int middle = (lo + hi) >>> 1;
+				if (anchors[middle] < time)
+					lo = middle + 1;
+				else
+					hi = middle;
+			}
+			return lo;
+		}
+	}
+
+	long limit;
+	ProjectionStream stream;
+	Sequence sounds;
+	Sequence marks;
+	long start = Long.MAX_VALUE, end = Long.MIN_VALUE; // the time the performance covers
+	long outcomes = 0;
+
+	// the last projection, which later outcomes refer to
+	long projectionBegin = -1, projectionEnd = -1;
+	byte row = 0;
+	boolean atOnset; // are the outcomes coming in about a beginning?
+
+	// the summaries: levels[level][kind][bucket]
+	long bucketWidth; // of level 0
+	int[][] base = new int[KINDS][1024]; // level 0, while it's being built
+	int baseCount = 0;
+	int[][][] levels = null;
+	int[] levelMax; // the biggest count in any bucket of each level
+
+	public TimelineIndex(long limit) {
+		this.limit = limit;
+		stream = new ProjectionStream(limit, this);
+		sounds = new Sequence(REACH_LIMITS*limit);
+		marks = new Sequence(REACH_LIMITS*limit);
+		bucketWidth = Math.max(1, limit/BUCKETS_PER_LIMIT);
+	}
+
+	// the performance comes in here, a sound at a time
+	public void sound(long onset, long offset) {
+		if (!record(onset, offset))
+			return;
+		atOnset = true;
+		if (stream.onset(onset)) {
+			atOnset = false;
+			stream.offset(offset);
+		}
+	}
+
+	// keep a sound; false if it's before the first, with nowhere to put it
+	boolean record(long onset, long offset) {
+		if (start == Long.MAX_VALUE)
+			start = onset;
+		if (onset < start)
+			return false;
+		sounds.add(onset, offset, (byte)0, (byte)0);
+		end = Math.max(end, offset);
+		count(SOUNDS, onset);
+		return true;
+	}
+
+	/* The same for one level of a ProjectionHierarchy, whose outcomes are
+	 *  already decided.  What an outcome at a beginning is about begins at
+	 *  the beginning before; one at an end, at the beginning of its sound.
+	 */
+	public static TimelineIndex of(ProjectionHierarchy.Level level, long limit) {
+		TimelineIndex index = new TimelineIndex(limit);
+		for (int i = 0; i < level.count; i++) {
+			index.record(level.onsets[i], level.offsets[i]);
+			index.atOnset = true;
+			if ((i > 0) && (level.onsetCodes[i] >= 0))
+				index.outcome(i, level.onsetCodes[i], level.onsets[i - 1], level.onsets[i]);
+			index.atOnset = false;
+			if (level.offsetCodes[i] >= 0)
+				index.outcome(i, level.offsetCodes[i], level.onsets[i], level.offsets[i]);
+		}
+		index.finish();
+		return index;
+	}
+
+	// ... and the rules' verdicts on it come back here
+	public void outcome(long event, int code, long begin, long end) {
+		if (code < 0)
+			return;
+		outcomes++;
+		int kind = Projection.kind(code);
+		if (kind != Projection.OTHER)
+			count(kind, end);
+
+		// a 20 at the end of a sound only confirms the projection already drawn
+		switch (atOnset ? code : -code) {
+		case 8: case 19: case 20: case 22: case 24: case 25:
+			// decorations of the projection that's been realized (or not)
+			if ((code == 19) || (code == 24))
+				marks.add(end, end, (code == 19) ? ACCEL : RALL, row);
+			if ((code == 22) && (projectionEnd == begin))
+				marks.add(begin + (projectionEnd - projectionBegin), begin, PARENTH, row);
+			if ((code == 25) && (projectionEnd == begin))
+				marks.add(begin + (projectionEnd - projectionBegin)/2, begin, CROSS, row);
+			// and a new projection, in the other row from the last
+			row = (byte)(1 - row);
+			marks.add(begin, end + (end - begin), PROJECTION, row);
+			projectionBegin = begin;
+			projectionEnd = end;
+			break;
+		case -14:
+			// the second sound outlasts the projection: X it out
+			if (projectionEnd == begin)
+				marks.add(begin + (projectionEnd - projectionBegin)/2, begin, CROSS, row);
+			break;
+		case 21:
+			marks.add(begin + limit, begin, TRACKS, row);
+			marks.add(end, end, ARROW, row);
+			break;
+		}
+	}
+
+	void count(int kind, long time) {
+		long bucket = (time - start)/bucketWidth;
+		if (bucket >= Integer.MAX_VALUE/2)
+			return;
+		int b = (int)bucket;
+		if (b >= base[0].length) {
+			for (int k = 0; k < KINDS; k++)
+				base[k] = Arrays.copyOf(base[k], Math.max(2*base[k].length, b + 1));
+		}
+		base[kind][b]++;
+		baseCount = Math.max(baseCount, b + 1);
+	}
+
+	// the performance is over: build the summaries
+	public void finish() {
+		List<int[][]> built = new ArrayList<int[][]>();
+		int[][] level = new int[KINDS][];
+		for (int k = 0; k < KINDS; k++)
+			level[k] = Arrays.copyOf(base[k], Math.max(1, baseCount));
+		base = null;
+		built.add(level);
+		while (level[0].length > 1) {
+			int n = (level[0].length + 1)/2;
+			int[][] up = new int[KINDS][n];
+			for (int k = 0; k < KINDS; k++)
+				for (int i = 0; i < level[k].length; i++)
+					up[k][i/2] += level[k][i];
+			built.add(up);
+			level = up;
+		}
+		levels = built.toArray(new int[built.size()][][]);
+		levelMax = new int[levels.length];
+		for (int l = 0; l < levels.length; l++)
+			for (int k = 0; k < KINDS; k++)
+				for (int i = 0; i < levels[l][k].length; i++)
+					levelMax[l] = Math.max(levelMax[l], levels[l][k][i]);
+		if (start == Long.MAX_VALUE)
+			start = end = 0;
+	}
+
+	/* The coarsest level whose buckets are no wider than width, so that a
+	 *  column width wide takes at most a couple of them.
+	 */
+	int level(double width) {
+		int l = 0;
+		while ((l + 1 < levels.length) && ((double)(bucketWidth << (l + 1)) <= width))
+			l++;
+		return l;
+	}
+
+	// how many of kind fall in [from, to), at level l (roughly: whole buckets)
+	int count(int l, int kind, long from, long to) {
+		long width = bucketWidth << l;
+		int[] buckets = levels[l][kind];
+		long first = Math.max(0, Math.floorDiv(from - start, width));
+		long last = Math.min(buckets.length, Math.floorDiv(to - start + width - 1, width));
+		int total = 0;
+		for (long i = first; i < last; i++)
+			total += buckets[(int)i];
+		return total;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+	public long getLimit() {
+		return limit;
+	}
+
+	public int getSoundCount() {
+		return sounds.count;
+	}
+
+	public int getMarkCount() {
+		return marks.count;
+	}
+}
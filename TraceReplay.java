@@ -0,0 +1,176 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.awt.*;
+import java.awt.event.*;
+import java.io.*;
+import java.util.concurrent.locks.*;
+
+/*
+ * Plays an InputTrace back into the demo, at the speed it was recorded or
+ *  as fast as it will go, and reports how many events (states of the
+ *  demo) it got through a second.  It can run with no display at all,
+ *  drawing nothing; recording the diagram into its Scene as the demo
+ *  does, but not drawing it; or in a window, drawing it all.  Since a
+ *  replay always goes the same way, it ends with a checksum of the
+ *  message shown and the points defined after every event: two runs
+ *  that disagree went through different states.
+ *
+ *  Usage: java [-Djava.awt.headless=true] TraceReplay [-realtime] [-scene | -window]
+ *              [-repeat n] trace
+ */
+public class TraceReplay {
+	final static int NONE = 0; // draw nothing
+	final static int SCENE = 1; // record the diagram, but don't draw it
+	final static int WINDOW = 2; // draw it in a window
+
+	InputTrace trace;
+	Rhythm rhythm;
+	CoordinateArea area;
+	long checksum = 1;
+
+	public TraceReplay(InputTrace trace, Rhythm rhythm) {
+		if (null == trace) {
+			throw new IllegalArgumentException("The TraceReplay class was passed a null InputTrace object");
+		}
+		if (null == rhythm) {
+			throw new IllegalArgumentException("The TraceReplay class was passed a null Rhythm object");
+		}
+
+		this.trace = trace;
+		this.rhythm = rhythm;
+		this.area = rhythm.coordinateArea;
+	}
+
+	// hand on event i, just as MouseHandler and the buttons would
+	void replay(int i) {
+		int x = trace.xs[i], y = trace.ys[i];
+		switch (trace.kinds[i]) {
+		case InputTrace.MOVE:
+			area.handleMouseMove(x, y);
+			break;
+		case InputTrace.CLICK:
+			area.handleMouseDown(x, y);
+			break;
+		case InputTrace.BACK:
+			rhythm.pressedBack();
+			break;
+		case InputTrace.RESTART:
+			rhythm.pressedRestart();
+			break;
+		case InputTrace.FORWARD:
+			rhythm.pressedForward();
+			break;
+		}
+		// fold the state we're in into the checksum
+		long state = 31*rhythm.message + rhythm.getWherein();
+		for (int k = 0; k <= rhythm.getWherein(); k++)
+			state = 31*state + rhythm.getPoint(k).x;
+		checksum = 31*checksum + state;
+	}
+
+	/* Play the whole trace, waiting for each event's time if realtime;
+	 *  returns the nanoseconds it took.  If onEventThread, each event is
+	 *  handed to the event thread, as a window needs.
+	 */
+	public long run(boolean realtime, boolean onEventThread) throws Exception {
+		long start = System.nanoTime();
+		for (int i = 0; i < trace.getCount(); i++) {
+			if (realtime) {
+				long wait = start + trace.times[i] - System.nanoTime();
+				if (wait > 0)
+					LockSupport.parkNanos(wait);
+			}
+			if (onEventThread) {
+				final int event = i;
+				EventQueue.invokeAndWait(new Runnable() {
+						public void run() {
+							replay(event);
+						}
+					});
+			} else
+				replay(i);
+		}
+		return System.nanoTime() - start;
+	}
+
+	public long getChecksum() {
+		return checksum;
+	}
+
+	public static void main(String argv[]) throws Exception {
+		boolean realtime = false;
+		int mode = NONE;
+		int repeat = 1;
+		String name = null;
+		for (int i = 0; i < argv.length; i++) {
+			if (argv[i].equals("-realtime"))
+				realtime = true;
+			else if (argv[i].equals("-scene"))
+				mode = SCENE;
+			else if (argv[i].equals("-window"))
+				mode = WINDOW;
+			else if (argv[i].equals("-repeat") && (i + 1 < argv.length))
+				repeat = Integer.parseInt(argv[++i]);
+			else if ((name == null) && !argv[i].startsWith("-"))
+				name = argv[i];
+			else
+				name = null;
+		}
+		if (name == null) {
+			System.err.println("Usage: java TraceReplay [-realtime] [-scene | -window] [-repeat n] trace");
+			System.exit(1);
+		}
+		InputTrace trace = InputTrace.read(new File(name));
+
+		Rhythm rhythm = new Rhythm();
+		Frame frame = null;
+		if (mode == WINDOW) {
+			frame = new Frame("TraceReplay");
+			rhythm.setSize(400, 350);
+			frame.add(rhythm);
+			frame.pack();
+			rhythm.init();
+			frame.setSize(400, 450);
+			frame.setVisible(true);
+		} else {
+			rhythm.initPoints();
+			rhythm.coordinateArea = new CoordinateArea(rhythm);
+			rhythm.coordinateArea.drawing = (mode == SCENE);
+		}
+
+		TraceReplay replay = new TraceReplay(trace, rhythm);
+		for (int r = 0; r < repeat; r++) {
+			// every run starts from the beginning
+			if (mode == WINDOW)
+				EventQueue.invokeAndWait(new Runnable() {
+						public void run() {
+							rhythm.pressedRestart();
+						}
+					});
+			else
+				rhythm.pressedRestart();
+			replay.checksum = 1;
+			long nanos = replay.run(realtime, mode == WINDOW);
+			System.out.println(String.format("%d events in %.3f s (recorded in %.3f s): %.0f states/s, checksum %016x",
+											 trace.getCount(), nanos/1e9, trace.getDuration()/1e9,
+											 trace.getCount()/(nanos/1e9), replay.getChecksum()));
+		}
+		if (frame != null)
+			frame.dispose();
+		System.exit(0);
+	}
+}
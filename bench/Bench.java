@@ -0,0 +1,283 @@
+/*
+ * Copyright 1998, Tom Roeder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+
+/*
+ * Benchmarks for the demo, run without a display:
+ *  newPoint      Rhythm.newPoint with 0 to 5 points already placed, so
+ *                its scan of the earlier points gets longer
+ *  click         handleMouseDown, from a restart through the clicks that
+ *                end on each message code
+ *  move          handleMouseMove back and forth within each message code
+ *                that a move can show
+ *  paint         paint() of the diagram for each click code into an
+ *                offscreen BufferedImage
+ *  classify      Projection.classifyAll over a batch of performances
+ *
+ *  Each benchmark is warmed up and then timed over several iterations,
+ *  and the results are written as JSON, in the shape JMH uses, so they
+ *  can be compared from one release to the next.
+ *
+ *  Usage: bench/bench.sh [-quick] [-o results.json] [name...]
+ */
+public class Bench {
+	// something for a benchmark to do, over and over
+	interface Op {
+		int run(); // the result goes to the sink, so it isn't optimized away
+	}
+
+	// the clicks that leave the demo showing each message code
+	final static int[][] clickScripts = {
+		{ 4, 0, 100 },
+		{ 5, 0, 200 },
+		{ 8, 0, 100, 150 },
+		{ 9, 0, 100, 300 },
+		{ 13, 0, 100, 150, 250 },
+		{ 14, 0, 100, 120, 245 },
+		{ 15, 0, 100, 120, 260 },
+		{ 19, 0, 100, 150, 250, 280 },
+		{ 20, 0, 100, 150, 250, 300 },
+		{ 21, 0, 40, 80, 120, 220 },
+		{ 22, 0, 100, 150, 250, 255 },
+		{ 23, 0, 100, 150, 250, 255, 10 },
+		{ 24, 0, 40, 80, 120, 180 },
+		{ 25, 0, 40, 80, 120, 205 },
+	};
+
+	// for each code a move can show: the code, two places to move between, and the clicks before
+	final static int[][] moveScripts = {
+		{ 1, 0, 0, 0 },
+		{ 2, 50, 51, 0 },
+		{ 3, 200, 201, 0 },
+		{ 6, 50, 51, 0, 100 },
+		{ 7, 120, 121, 0, 100 },
+		{ 10, 200, 201, 0, 100, 150 },
+		{ 11, 245, 246, 0, 100, 120 },
+		{ 12, 260, 261, 0, 100, 120 },
+		{ 16, 200, 201, 0, 100, 150, 250 },
+		{ 17, 270, 271, 0, 100, 150, 250 },
+		// 18 can't be shown: the arc has always stopped before a move gets that far
+	};
+
+	static int warmups = 5;
+	static int iterations = 5;
+	static long iterationNanos = 500000000L;
+	static volatile int sink; // where results go to be ignored
+	static java.util.List<String> results = new ArrayList<String>();
+
+	public static void main(String argv[]) throws IOException {
+		String output = "bench-results.json";
+		Set<String> only = new HashSet<String>();
+		for (int i = 0; i < argv.length; i++) {
+			if (argv[i].equals("-quick")) {
+				warmups = 2;
+				iterations = 3;
+				iterationNanos = 100000000L;
+			} else if (argv[i].equals("-o") && (i + 1 < argv.length))
+				output = argv[++i];
+			else
+				only.add(argv[i]);
+		}
+
+		if (only.isEmpty() || only.contains("newPoint"))
+			benchNewPoint();
+		if (only.isEmpty() || only.contains("click"))
+			benchClicks();
+		if (only.isEmpty() || only.contains("move"))
+			benchMoves();
+		if (only.isEmpty() || only.contains("paint"))
+			benchPaint();
+		if (only.isEmpty() || only.contains("classify"))
+			benchClassify();
+
+		PrintWriter out = new PrintWriter(new FileWriter(output));
+		out.println("[");
+		for (int i = 0; i < results.size(); i++)
+			out.println(results.get(i) + ((i + 1 < results.size()) ? "," : ""));
+		out.println("]");
+		out.close();
+		System.out.println("wrote " + results.size() + " results to " + output);
+	}
+
+	// a demo with no display
+	static CoordinateArea newArea() {
+		Rhythm rhythm = new Rhythm();
+		rhythm.initPoints();
+		CoordinateArea area = new CoordinateArea(rhythm);
+		rhythm.coordinateArea = area;
+		return area;
+	}
+
+	// restart the demo and click through script, from index from on
+	static void click(CoordinateArea area, int[] script, int from) {
+		area.controller.initPoints();
+		area.restart();
+		for (int i = from; i < script.length; i++)
+			area.handleMouseDown(script[i], 50);
+	}
+
+	static void benchNewPoint() {
+		for (int depth = 0; depth < 6; depth++) {
+			final Rhythm rhythm = newArea().controller;
+			for (int i = 0; i < depth; i++)
+				rhythm.newPoint(40*i, 50);
+			final int x = 40*depth;
+			measure("newPoint", "points", Integer.toString(depth), new Op() {
+					public int run() {
+						rhythm.newPoint(x, 50);
+						// and take it away again
+						rhythm.points[rhythm.wherein--] = null;
+						return rhythm.wherein;
+					}
+				});
+		}
+	}
+
+	static void benchClicks() {
+		for (int i = 0; i < clickScripts.length; i++) {
+			final int[] script = clickScripts[i];
+			final CoordinateArea area = newArea();
+			click(area, script, 1);
+			check(area, script[0]);
+			measure("click", "code", Integer.toString(script[0]), new Op() {
+					public int run() {
+						click(area, script, 1);
+						return area.controller.message;
+					}
+				});
+		}
+	}
+
+	static void benchMoves() {
+		for (int i = 0; i < moveScripts.length; i++) {
+			final int[] script = moveScripts[i];
+			final CoordinateArea area = newArea();
+			click(area, script, 3);
+			area.handleMouseMove(script[1], 50);
+			check(area, script[0]);
+			area.handleMouseMove(script[2], 50);
+			check(area, script[0]);
+			measure("move", "code", Integer.toString(script[0]), new Op() {
+					boolean flip = false;
+					public int run() {
+						flip = !flip;
+						area.handleMouseMove(flip ? script[1] : script[2], 50);
+						return area.controller.message;
+					}
+				});
+		}
+	}
+
+	static void benchPaint() {
+		final BufferedImage image = new BufferedImage(400, 150, BufferedImage.TYPE_INT_RGB);
+		for (int i = 0; i < clickScripts.length; i++) {
+			final int[] script = clickScripts[i];
+			final CoordinateArea area = newArea();
+			click(area, script, 1);
+			final Graphics g = image.getGraphics();
+			g.setColor(Color.black);
+			g.setFont(new Font("Dialog", Font.PLAIN, 12));
+			measure("paint", "code", Integer.toString(script[0]), new Op() {
+					public int run() {
+						area.paint(g);
+						return area.scene.primitives;
+					}
+				});
+			g.dispose();
+		}
+	}
+
+	static void benchClassify() {
+		final int count = 100000;
+		final long[] onsets = new long[3*count];
+		final long[] offsets = new long[3*count];
+		final int[] codes = new int[count];
+		Random random = new Random(1998);
+		for (int i = 0; i < count; i++) {
+			long t = 0;
+			for (int k = 0; k < 3; k++) {
+				onsets[3*i + k] = t;
+				t += 1 + random.nextInt(150);
+				offsets[3*i + k] = t;
+				t += 1 + random.nextInt(100);
+			}
+		}
+		measure("classify", "performances", Integer.toString(count), new Op() {
+				public int run() {
+					Projection.classifyAll(onsets, offsets, count, Projection.unitLength, codes);
+					return codes[count - 1];
+				}
+			});
+	}
+
+	// make sure a script really leaves the demo showing code
+	static void check(CoordinateArea area, int code) {
+		if (area.controller.message != code)
+			throw new IllegalStateException("Expected message " + code + " but got "
+											+ area.controller.message);
+	}
+
+	/* Time op: warm it up, then run it for a number of iterations of a
+	 *  fixed length each, and record the average time per call.
+	 */
+	static void measure(String name, String param, String value, Op op) {
+		for (int i = 0; i < warmups; i++)
+			iteration(op);
+		double[] scores = new double[iterations];
+		double mean = 0;
+		for (int i = 0; i < iterations; i++) {
+			scores[i] = iteration(op);
+			mean += scores[i];
+		}
+		mean /= iterations;
+		double variance = 0;
+		for (int i = 0; i < iterations; i++)
+			variance += (scores[i] - mean)*(scores[i] - mean);
+		double error = (iterations > 1) ? Math.sqrt(variance/(iterations - 1)) : 0;
+
+		System.out.println(String.format("%-10s %s=%-6s %12.1f +- %8.1f ns/op",
+										 name, param, value, mean, error));
+		StringBuilder raw = new StringBuilder();
+		for (int i = 0; i < iterations; i++)
+			raw.append((i > 0) ? ", " : "").append(scores[i]);
+		results.add("  { \"benchmark\": \"Bench." + name + "\", \"mode\": \"avgt\", "
+					+ "\"warmupIterations\": " + warmups + ", \"measurementIterations\": " + iterations
+					+ ", \"params\": { \"" + param + "\": \"" + value + "\" }, "
+					+ "\"primaryMetric\": { \"score\": " + mean + ", \"scoreError\": " + error
+					+ ", \"scoreUnit\": \"ns/op\", \"rawData\": [[" + raw + "]] } }");
+	}
+
+	// one timed iteration: the average nanoseconds per call of op
+	static double iteration(Op op) {
+		long calls = 0;
+		long start = System.nanoTime();
+		long end = start + iterationNanos;
+		long now;
+		int result = 0;
+		do {
+			for (int i = 0; i < 64; i++)
+				result += op.run();
+			calls += 64;
+			now = System.nanoTime();
+		} while (now < end);
+		sink = result;
+		return (now - start)/(double)calls;
+	}
+}
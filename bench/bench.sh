@@ -0,0 +1,10 @@
+#!/bin/sh
+
+# Build the demo together with the benchmarks and run them without a display.
+#  The arguments go to Bench; the results are written to bench-results.json
+#  unless -o says otherwise.
+readonly dir="$(readlink -e "$(dirname $0)")"
+
+mkdir -p "${dir}/classes"
+javac -d "${dir}/classes" "${dir}"/../*.java "${dir}"/*.java || exit 1
+java -Djava.awt.headless=true -cp "${dir}/classes" Bench "$@"
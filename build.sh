@@ -1,4 +1,4 @@
 #!/bin/sh
 
-javac Rhythm.java
+javac *.java
 jar cvfm MeterAsRhythm.jar manifest.txt *.class